@@ -26,14 +26,56 @@ dependencies {
 	testRuntimeOnly(libs.bundles.testRuntime)
 }
 
+// Incubating Vector API kernel, compiled apart so only its own compile task needs the incubating module
+val vector: SourceSet by sourceSets.creating {
+	compileClasspath += sourceSets.main.get().output
+}
+tasks.named<JavaCompile>(vector.compileJavaTaskName) {
+	options.compilerArgs.addAll(listOf("--add-modules", "jdk.incubator.vector"))
+	// javac before 21 has no incubating lint category, and silences that warning only with all others
+	options.compilerArgumentProviders.add(CommandLineArgumentProvider {
+		listOf(if (javaCompiler.get().metadata.languageVersion.canCompileOrRun(21)) "-Xlint:-incubating" else "-nowarn")
+	})
+}
+tasks.jar {
+	from(vector.output)
+}
+
+sourceSets.test {
+	runtimeClasspath += vector.output
+}
 tasks.test {
 	useJUnitPlatform()
+	jvmArgs("--add-modules", "jdk.incubator.vector")
+}
+
+val jmh: SourceSet by sourceSets.creating {
+	compileClasspath += sourceSets.main.get().output + vector.output
+	runtimeClasspath += sourceSets.main.get().output + vector.output
+}
+dependencies {
+	"jmhImplementation"(libs.jmh)
+	"jmhAnnotationProcessor"(libs.jmhGenerator)
+}
+tasks.named<JavaCompile>(jmh.compileJavaTaskName) {
+	options.compilerArgs.addAll(listOf("--add-modules", "jdk.incubator.vector"))
+}
+tasks.register<JavaExec>("jmh") {
+	description = "Runs JMH benchmarks"
+	group = "verification"
+
+	classpath = jmh.runtimeClasspath
+	mainClass = "org.openjdk.jmh.Main"
+	args(providers.gradleProperty("jmh.includes").getOrElse(".*"))
 }
 
 java {
 	withSourcesJar()
 	withJavadocJar()
 }
+tasks.named<Jar>("sourcesJar") {
+	from(vector.allSource)
+}
 
 publishing {
 	publications {
@@ -0,0 +1,73 @@
+package dev.kkorolyov.flub.data;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares concurrent adds and lookups of {@link ConcurrentTrie} with a {@link Trie} guarded by {@code synchronized}.
+ * Each thread adds and looks up random values of 4 elements, 9 in 10 operations being lookups.
+ * Run with {@code -t} to vary the number of threads.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(Threads.MAX)
+public class ConcurrentTrieBenchmark {
+	@State(Scope.Benchmark)
+	public static class Tries {
+		private ConcurrentTrie<Integer> concurrent;
+		private Trie<Integer> synced;
+
+		@Setup(Level.Iteration)
+		public void setup() {
+			concurrent = new ConcurrentTrie<>();
+			synced = new Trie<>();
+		}
+	}
+	@State(Scope.Thread)
+	public static class Values {
+		private final SplittableRandom random = new SplittableRandom();
+
+		List<Integer> next() {
+			return List.of(random.nextInt(256), random.nextInt(64), random.nextInt(64), random.nextInt(64));
+		}
+		boolean read() {
+			return random.nextInt(10) > 0;
+		}
+	}
+
+	@Benchmark
+	public boolean concurrent(Tries tries, Values values) {
+		List<Integer> value = values.next();
+		if (values.read()) return tries.concurrent.contains(value);
+
+		tries.concurrent.add(value);
+		return true;
+	}
+	@Benchmark
+	public boolean synchronizedTrie(Tries tries, Values values) {
+		List<Integer> value = values.next();
+		synchronized (tries.synced) {
+			if (values.read()) return tries.synced.contains(value);
+
+			tries.synced.add(value);
+			return true;
+		}
+	}
+}
@@ -0,0 +1,73 @@
+package dev.kkorolyov.flub.data;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.BitSet;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares intersection of dense bitsets using {@link BitSet#and(BitSet)} and the scalar and vectorized {@link WordKernel}s.
+ * Each benchmark copies its first operand first, so all pay the same allocation cost.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class IntersectionBenchmark {
+	@Param({"1048576", "8388608"})
+	private int bits;
+
+	private BitSet bitSet;
+	private BitSet otherBitSet;
+
+	private long[] words;
+	private long[] otherWords;
+
+	private final WordKernel scalar = new ScalarWordKernel();
+	private final WordKernel vector = WordKernel.INSTANCE;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		if (!(vector instanceof VectorWordKernel)) throw new IllegalStateException("vector kernel unavailable");
+
+		SplittableRandom random = new SplittableRandom(0);
+		words = random.longs(bits / Long.SIZE).toArray();
+		otherWords = random.longs(bits / Long.SIZE).toArray();
+
+		bitSet = BitSet.valueOf(words);
+		otherBitSet = BitSet.valueOf(otherWords);
+	}
+
+	@Benchmark
+	public BitSet bitSetAnd() {
+		BitSet result = (BitSet) bitSet.clone();
+		result.and(otherBitSet);
+		return result;
+	}
+	@Benchmark
+	public long[] scalarAnd() {
+		long[] result = words.clone();
+		scalar.and(result, otherWords);
+		return result;
+	}
+	@Benchmark
+	public long[] vectorAnd() {
+		long[] result = words.clone();
+		vector.and(result, otherWords);
+		return result;
+	}
+}
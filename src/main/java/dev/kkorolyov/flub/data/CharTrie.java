@@ -0,0 +1,129 @@
+package dev.kkorolyov.flub.data;
+
+import java.util.Arrays;
+
+/**
+ * A {@link Trie} specialized for {@code char} elements.
+ * Values are read directly from {@link CharSequence}s without boxing, and each node stores its children in a sorted {@code char[]} searched by binary search, so lookups allocate nothing.
+ */
+public final class CharTrie {
+	private final Node root = new Node(null, '\0');
+
+	/**
+	 * @param value value to check
+	 * @return whether this trie contains {@code value} at a terminal node
+	 */
+	public boolean contains(CharSequence value) {
+		Node node = get(value);
+		return node != null && node.terminal;
+	}
+
+	/**
+	 * @param value value to get node for
+	 * @return node located by traversing the characters of {@code value} in this trie, or {@code null} if no such node
+	 */
+	public Node get(CharSequence value) {
+		if (value.length() == 0) return null;
+
+		Node node = root;
+		for (int i = 0; i < value.length() && node != null; i++) {
+			node = node.get(value.charAt(i));
+		}
+		return node;
+	}
+
+	/**
+	 * Adds a complete value to this trie.
+	 * @param value value to add
+	 * @return {@code this}
+	 */
+	public CharTrie add(CharSequence value) {
+		Node node = root;
+		for (int i = 0; i < value.length(); i++) {
+			node = node.computeIfAbsent(value.charAt(i));
+		}
+		if (node != root) node.terminal = true;
+
+		return this;
+	}
+
+	/**
+	 * A single node in a {@link CharTrie}.
+	 * A node which {@link #isTerminal()} represents a complete value in the associated trie.
+	 */
+	public static final class Node {
+		private static final char[] NO_KEYS = new char[0];
+		private static final Node[] NO_CHILDREN = new Node[0];
+
+		private final Node parent;
+		private final char element;
+		private char[] keys = NO_KEYS;
+		private Node[] children = NO_CHILDREN;
+		private int size;
+		private boolean terminal;
+
+		private Node(Node parent, char element) {
+			this.parent = parent;
+			this.element = element;
+		}
+
+		/**
+		 * @param element element to check
+		 * @return whether this node contains a child node at {@code element}
+		 */
+		public boolean contains(char element) {
+			return Arrays.binarySearch(keys, 0, size, element) >= 0;
+		}
+
+		/**
+		 * @param element element to get child node for
+		 * @return child node at {@code element}, or {@code null} if no such node
+		 */
+		public Node get(char element) {
+			int i = Arrays.binarySearch(keys, 0, size, element);
+			return i >= 0 ? children[i] : null;
+		}
+		private Node computeIfAbsent(char element) {
+			int i = Arrays.binarySearch(keys, 0, size, element);
+			if (i >= 0) return children[i];
+
+			i = -i - 1;
+			if (size == keys.length) {
+				int capacity = Math.max(2, size * 2);
+				keys = Arrays.copyOf(keys, capacity);
+				children = Arrays.copyOf(children, capacity);
+			}
+			System.arraycopy(keys, i, keys, i + 1, size - i);
+			System.arraycopy(children, i, children, i + 1, size - i);
+			size++;
+
+			keys[i] = element;
+			return children[i] = new Node(this, element);
+		}
+
+		/** @return keys of child nodes, in ascending order */
+		public char[] getKeys() {
+			return Arrays.copyOf(keys, size);
+		}
+
+		/**
+		 * Computes this node's value by walking its ancestors.
+		 * @return full node value
+		 */
+		public String getValue() {
+			int depth = 0;
+			for (Node node = this; node.parent != null; node = node.parent) depth++;
+
+			char[] value = new char[depth];
+			for (Node node = this; node.parent != null; node = node.parent) {
+				value[--depth] = node.element;
+			}
+			return new String(value);
+		}
+
+		/** @return whether this node represents a complete value */
+		public boolean isTerminal() {
+			return terminal;
+		}
+	}
+}
@@ -0,0 +1,243 @@
+package dev.kkorolyov.flub.data;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PrimitiveIterator;
+import java.util.function.DoubleUnaryOperator;
+import java.util.function.IntUnaryOperator;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+/**
+ * Per-key columns of values indexed by the element indexes of a {@link SparseMultiset}.
+ * Each column stores its values contiguously in a typed array, so iterating matching indexes in ascending order reads each column sequentially.
+ * @param <K> key type
+ * @see SparseMultiset#columns()
+ */
+public final class ColumnStore<K> {
+	private final Map<K, Column> columns = new HashMap<>();
+
+	ColumnStore() {}
+
+	/**
+	 * @param key key to get column for
+	 * @return {@code int} column for {@code key}, created if it does not exist
+	 * @throws IllegalArgumentException if {@code key} has a column of a different type
+	 */
+	public IntColumn ints(K key) {
+		return column(key, IntColumn.class, IntColumn::new);
+	}
+	/**
+	 * @param key key to get column for
+	 * @return {@code double} column for {@code key}, created if it does not exist
+	 * @throws IllegalArgumentException if {@code key} has a column of a different type
+	 */
+	public DoubleColumn doubles(K key) {
+		return column(key, DoubleColumn.class, DoubleColumn::new);
+	}
+	/**
+	 * @param key key to get column for
+	 * @param <V> value type
+	 * @return object column for {@code key}, created if it does not exist
+	 * @throws IllegalArgumentException if {@code key} has a column of a different type
+	 */
+	public <V> ObjectColumn<V> objects(K key) {
+		return column(key, ObjectColumn.class, ObjectColumn::new);
+	}
+
+	/**
+	 * @param key key to check
+	 * @return whether {@code key} has a column
+	 */
+	public boolean contains(K key) {
+		return columns.containsKey(key);
+	}
+
+	private <C extends Column> C column(K key, Class<? super C> type, Supplier<C> factory) {
+		Column column = columns.computeIfAbsent(key, k -> factory.get());
+		if (!type.isInstance(column)) throw new IllegalArgumentException("key " + key + " has a column of type " + column.getClass().getSimpleName());
+		return (C) column;
+	}
+
+	/** Resets the value at {@code i} in every column. */
+	void clear(int i) {
+		for (Column column : columns.values()) {
+			column.clear(i);
+		}
+	}
+	/** Resets the value at {@code i} in {@code key}'s column, if any. */
+	void clear(int i, K key) {
+		Column column = columns.get(key);
+		if (column != null) column.clear(i);
+	}
+
+	/**
+	 * Moves each value at index {@code i} to index {@code mapping[i]}, discarding it if negative, and truncates all columns to {@code size}.
+	 */
+	void remap(int[] mapping, int size) {
+		for (Column column : columns.values()) {
+			column.remap(mapping, size);
+		}
+	}
+
+	/**
+	 * A column of values indexed by element index.
+	 */
+	abstract static class Column {
+		abstract void clear(int i);
+		abstract void remap(int[] mapping, int size);
+
+		static int capacity(int length, int i) {
+			return Math.max(i + 1, Math.max(16, length * 2));
+		}
+	}
+
+	/**
+	 * A column of {@code int} values.
+	 */
+	public static final class IntColumn extends Column {
+		private int[] values = new int[0];
+
+		private IntColumn() {}
+
+		/** @return value at index {@code i}, or {@code 0} if never set */
+		public int get(int i) {
+			return i < values.length ? values[i] : 0;
+		}
+		/** Sets the value at index {@code i}. */
+		public void set(int i, int value) {
+			if (i >= values.length) values = Arrays.copyOf(values, capacity(values.length, i));
+			values[i] = value;
+		}
+		/**
+		 * Replaces the value at each of {@code indexes} with the result of {@code op}, in iteration order.
+		 */
+		public void update(PrimitiveIterator.OfInt indexes, IntUnaryOperator op) {
+			while (indexes.hasNext()) {
+				int i = indexes.nextInt();
+				set(i, op.applyAsInt(get(i)));
+			}
+		}
+
+		/**
+		 * Returns the backing array of this column for direct access by element index.
+		 * The array may be replaced by a later {@link #set(int, int)}, and may be shorter than the number of elements in the associated multiset.
+		 */
+		public int[] values() {
+			return values;
+		}
+
+		@Override
+		void clear(int i) {
+			if (i < values.length) values[i] = 0;
+		}
+		@Override
+		void remap(int[] mapping, int size) {
+			int[] result = new int[size];
+			for (int i = 0; i < Math.min(values.length, mapping.length); i++) {
+				if (mapping[i] >= 0) result[mapping[i]] = values[i];
+			}
+			values = result;
+		}
+	}
+
+	/**
+	 * A column of {@code double} values.
+	 */
+	public static final class DoubleColumn extends Column {
+		private double[] values = new double[0];
+
+		private DoubleColumn() {}
+
+		/** @return value at index {@code i}, or {@code 0} if never set */
+		public double get(int i) {
+			return i < values.length ? values[i] : 0;
+		}
+		/** Sets the value at index {@code i}. */
+		public void set(int i, double value) {
+			if (i >= values.length) values = Arrays.copyOf(values, capacity(values.length, i));
+			values[i] = value;
+		}
+		/**
+		 * Replaces the value at each of {@code indexes} with the result of {@code op}, in iteration order.
+		 */
+		public void update(PrimitiveIterator.OfInt indexes, DoubleUnaryOperator op) {
+			while (indexes.hasNext()) {
+				int i = indexes.nextInt();
+				set(i, op.applyAsDouble(get(i)));
+			}
+		}
+
+		/**
+		 * Returns the backing array of this column for direct access by element index.
+		 * The array may be replaced by a later {@link #set(int, double)}, and may be shorter than the number of elements in the associated multiset.
+		 */
+		public double[] values() {
+			return values;
+		}
+
+		@Override
+		void clear(int i) {
+			if (i < values.length) values[i] = 0;
+		}
+		@Override
+		void remap(int[] mapping, int size) {
+			double[] result = new double[size];
+			for (int i = 0; i < Math.min(values.length, mapping.length); i++) {
+				if (mapping[i] >= 0) result[mapping[i]] = values[i];
+			}
+			values = result;
+		}
+	}
+
+	/**
+	 * A column of object values.
+	 * @param <V> value type
+	 */
+	public static final class ObjectColumn<V> extends Column {
+		private Object[] values = new Object[0];
+
+		private ObjectColumn() {}
+
+		/** @return value at index {@code i}, or {@code null} if never set */
+		public V get(int i) {
+			return i < values.length ? (V) values[i] : null;
+		}
+		/** Sets the value at index {@code i}. */
+		public void set(int i, V value) {
+			if (i >= values.length) values = Arrays.copyOf(values, capacity(values.length, i));
+			values[i] = value;
+		}
+		/**
+		 * Replaces the value at each of {@code indexes} with the result of {@code op}, in iteration order.
+		 */
+		public void update(PrimitiveIterator.OfInt indexes, UnaryOperator<V> op) {
+			while (indexes.hasNext()) {
+				int i = indexes.nextInt();
+				set(i, op.apply(get(i)));
+			}
+		}
+
+		/**
+		 * Returns the backing array of this column for direct access by element index.
+		 * The array may be replaced by a later {@link #set(int, Object)}, and may be shorter than the number of elements in the associated multiset.
+		 */
+		public Object[] values() {
+			return values;
+		}
+
+		@Override
+		void clear(int i) {
+			if (i < values.length) values[i] = null;
+		}
+		@Override
+		void remap(int[] mapping, int size) {
+			Object[] result = new Object[size];
+			for (int i = 0; i < Math.min(values.length, mapping.length); i++) {
+				if (mapping[i] >= 0) result[mapping[i]] = values[i];
+			}
+			values = result;
+		}
+	}
+}
@@ -0,0 +1,505 @@
+package dev.kkorolyov.flub.data;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import static dev.kkorolyov.flub.collections.Iterables.append;
+import static java.util.Collections.singleton;
+import static java.util.Collections.unmodifiableList;
+
+/**
+ * A thread-safe {@link Trie} which never blocks, structured as a concurrent trie (Ctrie).
+ * Each node is reached through an indirection node holding the node's current immutable contents.
+ * {@link #add(Iterable)} replaces only the contents of the one node it changes with a compare-and-set, so writers contend only when changing the same node, and copy only that node's children.
+ * Lookups traverse indirection nodes without locking.
+ * {@link #snapshot()} is {@code O(1)}: it starts a new generation of this trie, and writers lazily copy each indirection node still shared with the snapshot when they next pass through it.
+ * Iteration runs over such a snapshot, so it always observes a single consistent version.
+ * @param <T> element type
+ */
+public final class ConcurrentTrie<T> {
+	private static final VarHandle ROOT, MAIN, PREV;
+	static {
+		try {
+			MethodHandles.Lookup lookup = MethodHandles.lookup();
+			ROOT = lookup.findVarHandle(ConcurrentTrie.class, "root", Object.class);
+			MAIN = lookup.findVarHandle(INode.class, "main", Main.class);
+			PREV = lookup.findVarHandle(Main.class, "prev", Main.class);
+		} catch (ReflectiveOperationException e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+
+	private static final int[] NO_HASHES = new int[0];
+	private static final Object[] NO_KEYS = new Object[0];
+	private static final INode[] NO_CHILDREN = new INode[0];
+
+	/** the root {@link INode}, or a {@link RootSwap} in progress */
+	private volatile Object root;
+	private final boolean readOnly;
+
+	/** Constructs a new, empty trie. */
+	public ConcurrentTrie() {
+		this(new INode(new CNode(false, NO_HASHES, NO_KEYS, NO_CHILDREN), new Generation()), false);
+	}
+	private ConcurrentTrie(INode root, boolean readOnly) {
+		this.root = root;
+		this.readOnly = readOnly;
+	}
+
+	/** @see #contains(Iterable) */
+	public boolean contains(T element, T... elements) {
+		return contains(append(singleton(element), elements));
+	}
+	/** @see #contains(Iterable) */
+	public boolean contains(T[] value) {
+		return contains(Arrays.asList(value));
+	}
+	/**
+	 * @param value value to check
+	 * @return whether this trie contains {@code value} at a terminal node
+	 */
+	public boolean contains(Iterable<T> value) {
+		INode node = find(value, null);
+		return node != null && read(node).terminal;
+	}
+
+	/** @see #get(Iterable) */
+	public Node get(T element, T... elements) {
+		return get(append(singleton(element), elements));
+	}
+	/** @see #get(Iterable) */
+	public Node get(T[] value) {
+		return get(Arrays.asList(value));
+	}
+	/**
+	 * Returns a view of the node at {@code value}.
+	 * The view reflects later changes to the node.
+	 * @param value value to get node for
+	 * @return node located by traversing the elements of {@code value} in this trie, or {@code null} if no such node
+	 */
+	public Node get(Iterable<T> value) {
+		List<Object> path = new ArrayList<>();
+		INode node = find(value, path);
+		return node != null ? new Node(node, path.toArray()) : null;
+	}
+
+	/**
+	 * @param path if not {@code null}, receives each traversed element
+	 * @return indirection node at non-empty {@code value}, or {@code null} if no such node
+	 */
+	private INode find(Iterable<T> value, List<Object> path) {
+		Iterator<T> it = value.iterator();
+		if (!it.hasNext()) return null;
+
+		INode node = readRoot(false);
+		while (it.hasNext()) {
+			T element = it.next();
+			if (path != null) path.add(element);
+
+			CNode contents = read(node);
+			int i = contents.indexOf(element);
+			if (i < 0) return null;
+			node = contents.children[i];
+		}
+		return node;
+	}
+
+	/** @see #add(Iterable) */
+	public ConcurrentTrie<T> add(T element, T... elements) {
+		return add(append(singleton(element), elements));
+	}
+	/** @see #add(Iterable) */
+	public ConcurrentTrie<T> add(T[] value) {
+		return add(Arrays.asList(value));
+	}
+	/**
+	 * Adds a complete value to this trie.
+	 * @param value value to add
+	 * @return {@code this}
+	 */
+	public ConcurrentTrie<T> add(Iterable<T> value) {
+		Object[] elements = value instanceof List<?> list ? list.toArray() : toArray(value);
+		if (elements.length == 0) return this;
+
+		INode root;
+		do {
+			root = readRoot(false);
+		} while (!insert(root, elements, root.generation));
+
+		return this;
+	}
+	/**
+	 * Adds {@code elements} below {@code node}, copying nodes of older generations than {@code generation} along the way.
+	 * @return whether {@code elements} were added, or {@code false} if a conflicting change requires a restart from the root
+	 */
+	private boolean insert(INode node, Object[] elements, Generation generation) {
+		int offset = 0;
+		while (true) {
+			CNode contents = read(node);
+			if (offset == elements.length) {
+				return contents.terminal || swap(node, contents, new CNode(true, contents.hashes, contents.keys, contents.children));
+			}
+
+			int i = contents.indexOf(elements[offset]);
+			if (i < 0) return swap(node, contents, contents.inserted(-i - 1, elements, offset, generation));
+
+			INode child = contents.children[i];
+			if (child.generation == generation) {
+				node = child;
+				offset++;
+			} else if (!swap(node, contents, contents.renewed(generation, this))) {
+				return false;
+			}
+		}
+	}
+	private static Object[] toArray(Iterable<?> value) {
+		List<Object> elements = new ArrayList<>();
+		value.forEach(elements::add);
+		return elements.toArray();
+	}
+
+	/** @see #withPrefix(Iterable) */
+	public Stream<List<T>> withPrefix(T element, T... elements) {
+		return withPrefix(append(singleton(element), elements));
+	}
+	/** @see #withPrefix(Iterable) */
+	public Stream<List<T>> withPrefix(T[] prefix) {
+		return withPrefix(Arrays.asList(prefix));
+	}
+	/**
+	 * Returns a lazy stream of all complete values in the current version of this trie starting with {@code prefix}.
+	 * Values added after this call are not included.
+	 * @param prefix prefix of values to stream; an empty prefix streams all values
+	 * @return stream of values starting with {@code prefix}, in depth-first order
+	 * @see Trie#withPrefix(Iterable)
+	 */
+	public Stream<List<T>> withPrefix(Iterable<T> prefix) {
+		ConcurrentTrie<T> version = readOnlySnapshot();
+		ConcurrentTrie<T>.Node start = prefix.iterator().hasNext() ? version.get(prefix) : version.new Node(version.readRoot(false), NO_KEYS);
+		if (start == null) return Stream.empty();
+
+		Iterator<List<T>> it = new Iterator<>() {
+			private final Deque<ConcurrentTrie<T>.Node> stack = new ArrayDeque<>(List.of(start));
+			private ConcurrentTrie<T>.Node next = advance();
+
+			private ConcurrentTrie<T>.Node advance() {
+				while (!stack.isEmpty()) {
+					ConcurrentTrie<T>.Node node = stack.pop();
+					CNode contents = node.contents();
+					for (int i = contents.children.length - 1; i >= 0; i--) {
+						stack.push(node.child(contents, i));
+					}
+					if (contents.terminal) return node;
+				}
+				return null;
+			}
+
+			@Override
+			public boolean hasNext() {
+				return next != null;
+			}
+			@Override
+			public List<T> next() {
+				if (next == null) throw new NoSuchElementException();
+
+				ConcurrentTrie<T>.Node result = next;
+				next = advance();
+				return result.getValue();
+			}
+		};
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(it, Spliterator.NONNULL), false);
+	}
+
+	/**
+	 * Returns an independent copy of the current version of this trie in {@code O(1)}.
+	 * Later changes to either trie do not affect the other.
+	 * @return snapshot of this trie
+	 */
+	public ConcurrentTrie<T> snapshot() {
+		while (true) {
+			INode root = readRoot(false);
+			CNode contents = read(root);
+			if (swapRoot(root, contents, root.copy(new Generation(), this))) {
+				return new ConcurrentTrie<>(root.copy(new Generation(), this), false);
+			}
+		}
+	}
+	/** @return unmodifiable snapshot sharing the current root, or {@code this} if already read-only */
+	private ConcurrentTrie<T> readOnlySnapshot() {
+		if (readOnly) return this;
+
+		while (true) {
+			INode root = readRoot(false);
+			CNode contents = read(root);
+			if (swapRoot(root, contents, root.copy(new Generation(), this))) {
+				return new ConcurrentTrie<>(root, true);
+			}
+		}
+	}
+
+	/** @return committed contents of {@code node} */
+	private CNode read(INode node) {
+		Main main = node.main;
+		return (CNode) (main.prev == null ? main : commit(node, main));
+	}
+	/**
+	 * Replaces the contents of {@code node} from {@code expected} to {@code contents} if no snapshot of this trie was taken since {@code node} was reached.
+	 * @return whether the contents were replaced
+	 */
+	private boolean swap(INode node, CNode expected, CNode contents) {
+		contents.prev = expected;
+		if (MAIN.compareAndSet(node, expected, contents)) {
+			commit(node, contents);
+			return contents.prev == null;
+		}
+		return false;
+	}
+	/**
+	 * Completes a pending contents swap of {@code node} to {@code main}, committing it if the root generation still matches that of {@code node}, and rolling it back otherwise.
+	 * @return committed contents of {@code node}
+	 */
+	private Main commit(INode node, Main main) {
+		while (true) {
+			Main prev = main.prev;
+			INode root = readRoot(true);
+			if (prev == null) return main;
+
+			if (prev instanceof Failed) {
+				if (MAIN.compareAndSet(node, main, prev.prev)) return prev.prev;
+				main = node.main;
+			} else if (root.generation == node.generation && !readOnly) {
+				if (PREV.compareAndSet(main, prev, null)) return main;
+			} else {
+				PREV.compareAndSet(main, prev, new Failed(prev));
+				main = node.main;
+			}
+		}
+	}
+
+	/**
+	 * @param abort whether to roll back rather than complete a root swap in progress
+	 * @return current root
+	 */
+	private INode readRoot(boolean abort) {
+		Object root = this.root;
+		return root instanceof INode node ? node : completeRoot(abort);
+	}
+	/** Completes or rolls back any root swap in progress. */
+	private INode completeRoot(boolean abort) {
+		while (true) {
+			Object root = this.root;
+			if (root instanceof INode node) return node;
+
+			RootSwap swap = (RootSwap) root;
+			if (!abort && read(swap.expected) == swap.expectedContents) {
+				if (ROOT.compareAndSet(this, swap, swap.next)) {
+					swap.committed = true;
+					return swap.next;
+				}
+			} else if (ROOT.compareAndSet(this, swap, swap.expected)) {
+				return swap.expected;
+			}
+		}
+	}
+	/**
+	 * Replaces root {@code expected} with {@code next} if the contents of {@code expected} are still {@code expectedContents}.
+	 * @return whether the root was replaced
+	 */
+	private boolean swapRoot(INode expected, CNode expectedContents, INode next) {
+		RootSwap swap = new RootSwap(expected, expectedContents, next);
+		if (ROOT.compareAndSet(this, expected, swap)) {
+			completeRoot(false);
+			return swap.committed;
+		}
+		return false;
+	}
+
+	/**
+	 * Identifies the version of a trie which created an indirection node.
+	 */
+	private static final class Generation {}
+
+	/**
+	 * An indirection node holding the current contents of a trie node.
+	 */
+	private static final class INode {
+		private volatile Main main;
+		private final Generation generation;
+
+		INode(Main main, Generation generation) {
+			this.main = main;
+			this.generation = generation;
+		}
+
+		/** @return new indirection node of {@code generation} with the committed contents of this node in {@code trie} */
+		INode copy(Generation generation, ConcurrentTrie<?> trie) {
+			return new INode(trie.read(this), generation);
+		}
+	}
+
+	/**
+	 * Contents of an indirection node.
+	 * {@link #prev} is {@code null} once committed, or else the contents to restore if the swap to these contents fails.
+	 */
+	private static class Main {
+		volatile Main prev;
+	}
+	/**
+	 * Marks a failed swap, holding the contents to restore.
+	 */
+	private static final class Failed extends Main {
+		Failed(Main prev) {
+			this.prev = prev;
+		}
+	}
+
+	/**
+	 * Immutable contents of a trie node, with children sorted by element hash.
+	 */
+	private static final class CNode extends Main {
+		private final boolean terminal;
+		private final int[] hashes;
+		private final Object[] keys;
+		private final INode[] children;
+
+		CNode(boolean terminal, int[] hashes, Object[] keys, INode[] children) {
+			this.terminal = terminal;
+			this.hashes = hashes;
+			this.keys = keys;
+			this.children = children;
+		}
+
+		/** @return index of the child at {@code element}, or {@code -(insertion point) - 1} if no such child */
+		int indexOf(Object element) {
+			int hash = Objects.hashCode(element);
+
+			int i = Arrays.binarySearch(hashes, hash);
+			if (i < 0) return i;
+
+			int from = i;
+			while (from > 0 && hashes[from - 1] == hash) from--;
+			for (int j = from; j < hashes.length && hashes[j] == hash; j++) {
+				if (Objects.equals(keys[j], element)) return j;
+			}
+			return -from - 1;
+		}
+
+		/** @return copy of this node with a new child at index {@code i} holding {@code elements} from {@code offset} as a terminal value */
+		CNode inserted(int i, Object[] elements, int offset, Generation generation) {
+			CNode contents = new CNode(true, NO_HASHES, NO_KEYS, NO_CHILDREN);
+			for (int j = elements.length - 1; j > offset; j--) {
+				contents = new CNode(false, new int[]{Objects.hashCode(elements[j])}, new Object[]{elements[j]}, new INode[]{new INode(contents, generation)});
+			}
+			return new CNode(
+					terminal,
+					insert(hashes, i, Objects.hashCode(elements[offset])),
+					insert(keys, i, elements[offset]),
+					insert(children, i, new INode(contents, generation))
+			);
+		}
+		/** @return copy of this node with each child copied to {@code generation} */
+		CNode renewed(Generation generation, ConcurrentTrie<?> trie) {
+			INode[] renewed = new INode[children.length];
+			for (int i = 0; i < children.length; i++) {
+				renewed[i] = children[i].copy(generation, trie);
+			}
+			return new CNode(terminal, hashes, keys, renewed);
+		}
+
+		private static int[] insert(int[] array, int i, int value) {
+			int[] result = new int[array.length + 1];
+			System.arraycopy(array, 0, result, 0, i);
+			result[i] = value;
+			System.arraycopy(array, i, result, i + 1, array.length - i);
+			return result;
+		}
+		private static <E> E[] insert(E[] array, int i, E value) {
+			E[] result = Arrays.copyOf(array, array.length + 1);
+			result[i] = value;
+			System.arraycopy(array, i, result, i + 1, array.length - i);
+			return result;
+		}
+	}
+
+	/**
+	 * A root replacement in progress, which completes only if the expected root's contents are unchanged.
+	 */
+	private static final class RootSwap {
+		private final INode expected;
+		private final CNode expectedContents;
+		private final INode next;
+		private volatile boolean committed;
+
+		RootSwap(INode expected, CNode expectedContents, INode next) {
+			this.expected = expected;
+			this.expectedContents = expectedContents;
+			this.next = next;
+		}
+	}
+
+	/**
+	 * A view of a single node in a {@link ConcurrentTrie}.
+	 */
+	public final class Node {
+		private final INode node;
+		private final Object[] value;
+
+		private Node(INode node, Object[] value) {
+			this.node = node;
+			this.value = value;
+		}
+
+		/**
+		 * @param element element to check
+		 * @return whether this node contains a child node at {@code element}
+		 */
+		public boolean contains(T element) {
+			return contents().indexOf(element) >= 0;
+		}
+
+		/**
+		 * @param element element to get child node for
+		 * @return child node at {@code element}, or {@code null} if no such node
+		 */
+		public Node get(T element) {
+			CNode contents = contents();
+			int i = contents.indexOf(element);
+			return i >= 0 ? child(contents, i) : null;
+		}
+		private Node child(CNode contents, int i) {
+			Object[] childValue = Arrays.copyOf(value, value.length + 1);
+			childValue[value.length] = contents.keys[i];
+			return new Node(contents.children[i], childValue);
+		}
+		private CNode contents() {
+			return read(node);
+		}
+
+		/** @return keys of child nodes */
+		public List<T> getKeys() {
+			return (List<T>) unmodifiableList(Arrays.asList(contents().keys));
+		}
+
+		/** @return full node value */
+		public List<T> getValue() {
+			return (List<T>) unmodifiableList(Arrays.asList(value));
+		}
+
+		/** @return whether this node represents a complete value */
+		public boolean isTerminal() {
+			return contents().terminal;
+		}
+	}
+}
@@ -0,0 +1,236 @@
+package dev.kkorolyov.flub.data;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import static dev.kkorolyov.flub.collections.Iterables.append;
+import static java.util.Collections.singleton;
+import static java.util.Collections.unmodifiableList;
+
+/**
+ * An immutable, compact snapshot of a {@link Trie}.
+ * Nodes are numbered in breadth-first order and stored in flat parallel arrays, with the children of each node occupying a contiguous range of node ids sorted by element hash.
+ * Child lookup is a binary search over a slice of an {@code int[]}, and no per-node objects or maps are retained.
+ * @param <T> element type
+ * @see Trie#freeze()
+ */
+public final class FrozenTrie<T> {
+	final Object[] labels;
+	final int[] hashes;
+	final int[] parents;
+	final int[] children;
+	final BitSet terminals;
+
+	/**
+	 * Constructs a new frozen trie from its breadth-first node arrays, where node {@code 0} is the root.
+	 * @param labels element leading to each node
+	 * @param parents parent id of each node
+	 * @param children {@code children[i]} to {@code children[i + 1]} are the child ids of node {@code i}
+	 * @param terminals terminal node ids
+	 */
+	FrozenTrie(Object[] labels, int[] parents, int[] children, BitSet terminals) {
+		this.labels = labels;
+		this.parents = parents;
+		this.children = children;
+		this.terminals = terminals;
+
+		hashes = new int[labels.length];
+		for (int i = 1; i < labels.length; i++) hashes[i] = Objects.hashCode(labels[i]);
+	}
+
+	/** @see #contains(Iterable) */
+	public boolean contains(T element, T... elements) {
+		return contains(append(singleton(element), elements));
+	}
+	/** @see #contains(Iterable) */
+	public boolean contains(T[] value) {
+		return contains(Arrays.asList(value));
+	}
+	/**
+	 * @param value value to check
+	 * @return whether this trie contains {@code value} at a terminal node
+	 */
+	public boolean contains(Iterable<T> value) {
+		int node = find(value);
+		return node > 0 && terminals.get(node);
+	}
+
+	/** @see #get(Iterable) */
+	public Node get(T element, T... elements) {
+		return get(append(singleton(element), elements));
+	}
+	/** @see #get(Iterable) */
+	public Node get(T[] value) {
+		return get(Arrays.asList(value));
+	}
+	/**
+	 * @param value value to get node for
+	 * @return node located by traversing the elements of {@code value} in this trie, or {@code null} if no such node
+	 */
+	public Node get(Iterable<T> value) {
+		int node = find(value);
+		return node > 0 ? new Node(node) : null;
+	}
+
+	/** @see #withPrefix(Iterable) */
+	public Stream<List<T>> withPrefix(T element, T... elements) {
+		return withPrefix(append(singleton(element), elements));
+	}
+	/** @see #withPrefix(Iterable) */
+	public Stream<List<T>> withPrefix(T[] prefix) {
+		return withPrefix(Arrays.asList(prefix));
+	}
+	/**
+	 * @param prefix prefix of values to stream; an empty prefix streams all values
+	 * @return lazy stream of values starting with {@code prefix}, in depth-first order
+	 * @see Trie#withPrefix(Iterable)
+	 */
+	public Stream<List<T>> withPrefix(Iterable<T> prefix) {
+		int start = prefix.iterator().hasNext() ? find(prefix) : 0;
+		if (start < 0) return Stream.empty();
+
+		Iterator<List<T>> it = new Iterator<>() {
+			private int[] stack = {start};
+			private int depth = 1;
+			private int next = advance();
+
+			private int advance() {
+				while (depth > 0) {
+					int node = stack[--depth];
+
+					int count = children[node + 1] - children[node];
+					if (depth + count > stack.length) stack = Arrays.copyOf(stack, Math.max(stack.length * 2, depth + count));
+					for (int child = children[node + 1] - 1; child >= children[node]; child--) stack[depth++] = child;
+
+					if (terminals.get(node)) return node;
+				}
+				return -1;
+			}
+
+			@Override
+			public boolean hasNext() {
+				return next >= 0;
+			}
+			@Override
+			public List<T> next() {
+				if (next < 0) throw new NoSuchElementException();
+
+				int result = next;
+				next = advance();
+				return value(result);
+			}
+		};
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(it, Spliterator.NONNULL), false);
+	}
+
+	/** @return number of nodes in this trie, excluding the root */
+	public int size() {
+		return labels.length - 1;
+	}
+
+	/** @return id of the node at {@code value}, or {@code -1} if no such node */
+	private int find(Iterable<T> value) {
+		Iterator<T> it = value.iterator();
+		if (!it.hasNext()) return -1;
+
+		int node = 0;
+		while (it.hasNext() && (node = child(node, it.next())) >= 0) ;
+		return node;
+	}
+	/** @return id of the child of {@code node} at {@code element}, or {@code -1} if no such child */
+	private int child(int node, Object element) {
+		int from = children[node], to = children[node + 1];
+		int hash = Objects.hashCode(element);
+
+		int i = Arrays.binarySearch(hashes, from, to, hash);
+		if (i < 0) return -1;
+
+		// equal hashes are adjacent; scan both directions from the found one
+		for (int j = i; j >= from && hashes[j] == hash; j--) {
+			if (Objects.equals(labels[j], element)) return j;
+		}
+		for (int j = i + 1; j < to && hashes[j] == hash; j++) {
+			if (Objects.equals(labels[j], element)) return j;
+		}
+		return -1;
+	}
+
+	private List<T> value(int node) {
+		int depth = 0;
+		for (int i = node; i > 0; i = parents[i]) depth++;
+
+		Object[] value = new Object[depth];
+		for (int i = node; i > 0; i = parents[i]) {
+			value[--depth] = labels[i];
+		}
+		return (List<T>) unmodifiableList(Arrays.asList(value));
+	}
+
+	/**
+	 * A view of a single node in a {@link FrozenTrie}.
+	 * Views compare equal if they refer to the same node of the same trie.
+	 */
+	public final class Node {
+		private final int id;
+
+		private Node(int id) {
+			this.id = id;
+		}
+
+		/**
+		 * @param element element to check
+		 * @return whether this node contains a child node at {@code element}
+		 */
+		public boolean contains(T element) {
+			return child(id, element) >= 0;
+		}
+
+		/**
+		 * @param element element to get child node for
+		 * @return child node at {@code element}, or {@code null} if no such node
+		 */
+		public Node get(T element) {
+			int child = child(id, element);
+			return child >= 0 ? new Node(child) : null;
+		}
+
+		/** @return keys of child nodes */
+		public List<T> getKeys() {
+			return (List<T>) unmodifiableList(Arrays.asList(labels).subList(children[id], children[id + 1]));
+		}
+
+		/** @return full node value */
+		public List<T> getValue() {
+			return value(id);
+		}
+
+		/** @return whether this node represents a complete value */
+		public boolean isTerminal() {
+			return terminals.get(id);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) return true;
+			if (obj == null || getClass() != obj.getClass()) return false;
+			Node o = (Node) obj;
+			return id == o.id && trie() == o.trie();
+		}
+		@Override
+		public int hashCode() {
+			return 31 * System.identityHashCode(trie()) + id;
+		}
+
+		private FrozenTrie<T> trie() {
+			return FrozenTrie.this;
+		}
+	}
+}
@@ -0,0 +1,470 @@
+package dev.kkorolyov.flub.data;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import static dev.kkorolyov.flub.collections.Iterables.append;
+import static java.util.Collections.singleton;
+import static java.util.Collections.unmodifiableList;
+
+/**
+ * A read-only {@link Trie} backed by a memory-mapped file.
+ * The file holds the breadth-first node arrays of a {@link FrozenTrie} followed by the encoded element of each node, and all lookups read the mapped buffer directly, so opening a trie does not depend on its size and its contents stay off-heap.
+ * Elements are decoded only when a lookup finds a child with a matching hash, or when values are returned.
+ * <p>
+ * Child lookup compares {@link Object#hashCode()}s computed when the file was written, so element hash codes must be stable across JVM runs, as with {@link String}, {@link Character} and {@link Integer}.
+ * @param <T> element type
+ * @see #write(FrozenTrie, Path, Codec)
+ * @see #open(Path, Codec)
+ */
+public final class MappedTrie<T> {
+	private static final int MAGIC = 0x46545249;
+	private static final int VERSION = 1;
+	private static final int HEADER = 3 * Integer.BYTES;
+
+	private final Codec<T> codec;
+	private final int size;
+	private final IntBuffer hashes;
+	private final IntBuffer parents;
+	private final IntBuffer children;
+	private final IntBuffer offsets;
+	private final LongBuffer terminals;
+	private final ByteBuffer labels;
+
+	/**
+	 * Writes a trie to a file readable by {@link #open(Path, Codec)}, replacing any existing file.
+	 * Each section of the file is written straight to the file, so writing needs no heap proportional to the file size.
+	 * @param trie trie to write
+	 * @param path path to write to
+	 * @param codec element codec
+	 * @param <T> element type
+	 * @throws IOException if an I/O error occurs
+	 * @throws IllegalArgumentException if any section of the file would exceed the 2 GiB limit of a single mapping
+	 */
+	public static <T> void write(FrozenTrie<T> trie, Path path, Codec<? super T> codec) throws IOException {
+		int n = trie.labels.length;
+		long[] sections = sections(n);
+		for (long section : sections) checkSection(section);
+
+		long labelsPosition = HEADER;
+		for (long section : sections) labelsPosition += section;
+
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			int[] offsets = new int[n + 1];
+
+			SectionWriter labels = new SectionWriter(channel, labelsPosition);
+			ByteArrayOutputStream labelBytes = new ByteArrayOutputStream();
+			DataOutputStream labelOut = new DataOutputStream(labelBytes);
+			long labelsSize = 0;
+			for (int i = 1; i < n; i++) {
+				labelBytes.reset();
+				codec.encode((T) trie.labels[i], labelOut);
+				labels.put(labelBytes.toByteArray());
+
+				labelsSize += labelBytes.size();
+				checkSection(labelsSize);
+				offsets[i + 1] = (int) labelsSize;
+			}
+			labels.flush();
+
+			long[] terminals = trie.terminals.toLongArray();
+			int words = (int) (sections[4] / Long.BYTES);
+
+			SectionWriter out = new SectionWriter(channel, 0);
+			out.putInt(MAGIC).putInt(VERSION).putInt(n);
+			for (int hash : trie.hashes) out.putInt(hash);
+			for (int parent : trie.parents) out.putInt(parent);
+			for (int child : trie.children) out.putInt(child);
+			for (int offset : offsets) out.putInt(offset);
+			for (int i = 0; i < words; i++) out.putLong(i < terminals.length ? terminals[i] : 0);
+			out.flush();
+		}
+	}
+
+	/**
+	 * Memory-maps a trie file written by {@link #write(FrozenTrie, Path, Codec)}.
+	 * @param path path to read
+	 * @param codec element codec the file was written with
+	 * @param <T> element type
+	 * @return trie backed by the mapped contents of {@code path}
+	 * @throws IOException if an I/O error occurs
+	 * @throws IllegalArgumentException if {@code path} is not a complete trie file
+	 */
+	public static <T> MappedTrie<T> open(Path path, Codec<T> codec) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			ByteBuffer header = ByteBuffer.allocate(HEADER);
+			while (header.hasRemaining() && channel.read(header, header.position()) >= 0) ;
+
+			if (header.hasRemaining() || header.getInt(0) != MAGIC) throw new IllegalArgumentException("not a trie file");
+			if (header.getInt(Integer.BYTES) != VERSION) throw new IllegalArgumentException("unsupported trie file version: " + header.getInt(Integer.BYTES));
+
+			int n = header.getInt(2 * Integer.BYTES);
+			if (n < 1) throw new IllegalArgumentException("invalid trie file node count: " + n);
+
+			long[] sections = sections(n);
+			ByteBuffer[] buffers = new ByteBuffer[sections.length + 1];
+			long position = HEADER;
+			for (int i = 0; i < sections.length; i++) {
+				buffers[i] = map(channel, position, sections[i]);
+				position += sections[i];
+			}
+			buffers[sections.length] = map(channel, position, channel.size() - position);
+
+			MappedTrie<T> trie = new MappedTrie<>(n, buffers, codec);
+			if (trie.offsets.get(n) != trie.labels.limit()) throw new IllegalArgumentException("truncated trie file: expected " + trie.offsets.get(n) + " label bytes, found " + trie.labels.limit());
+			return trie;
+		}
+	}
+
+	/** @return sizes of the hash, parent, child, offset, and terminal sections of a file of {@code n} nodes */
+	private static long[] sections(int n) {
+		return new long[]{
+				(long) Integer.BYTES * n,
+				(long) Integer.BYTES * n,
+				(long) Integer.BYTES * (n + 1L),
+				(long) Integer.BYTES * (n + 1L),
+				(long) Long.BYTES * ((n + Long.SIZE - 1L) / Long.SIZE)
+		};
+	}
+	private static void checkSection(long size) {
+		if (size > Integer.MAX_VALUE) throw new IllegalArgumentException("trie file section of " + size + " bytes exceeds the 2 GiB mapping limit");
+	}
+	private static ByteBuffer map(FileChannel channel, long position, long size) throws IOException {
+		if (size < 0 || position + size > channel.size()) throw new IllegalArgumentException("truncated trie file: expected at least " + (position + Math.max(size, 0)) + " bytes, found " + channel.size());
+		checkSection(size);
+		return channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+	}
+
+	private MappedTrie(int n, ByteBuffer[] sections, Codec<T> codec) {
+		this.codec = codec;
+
+		size = n - 1;
+		hashes = sections[0].asIntBuffer();
+		parents = sections[1].asIntBuffer();
+		children = sections[2].asIntBuffer();
+		offsets = sections[3].asIntBuffer();
+		terminals = sections[4].asLongBuffer();
+		labels = sections[5];
+	}
+
+	/** @see #contains(Iterable) */
+	public boolean contains(T element, T... elements) {
+		return contains(append(singleton(element), elements));
+	}
+	/** @see #contains(Iterable) */
+	public boolean contains(T[] value) {
+		return contains(Arrays.asList(value));
+	}
+	/**
+	 * @param value value to check
+	 * @return whether this trie contains {@code value} at a terminal node
+	 */
+	public boolean contains(Iterable<T> value) {
+		int node = find(value);
+		return node > 0 && terminal(node);
+	}
+
+	/** @see #get(Iterable) */
+	public Node get(T element, T... elements) {
+		return get(append(singleton(element), elements));
+	}
+	/** @see #get(Iterable) */
+	public Node get(T[] value) {
+		return get(Arrays.asList(value));
+	}
+	/**
+	 * @param value value to get node for
+	 * @return node located by traversing the elements of {@code value} in this trie, or {@code null} if no such node
+	 */
+	public Node get(Iterable<T> value) {
+		int node = find(value);
+		return node > 0 ? new Node(node) : null;
+	}
+
+	/** @see #withPrefix(Iterable) */
+	public Stream<List<T>> withPrefix(T element, T... elements) {
+		return withPrefix(append(singleton(element), elements));
+	}
+	/** @see #withPrefix(Iterable) */
+	public Stream<List<T>> withPrefix(T[] prefix) {
+		return withPrefix(Arrays.asList(prefix));
+	}
+	/**
+	 * @param prefix prefix of values to stream; an empty prefix streams all values
+	 * @return lazy stream of values starting with {@code prefix}, in depth-first order
+	 * @see Trie#withPrefix(Iterable)
+	 */
+	public Stream<List<T>> withPrefix(Iterable<T> prefix) {
+		int start = prefix.iterator().hasNext() ? find(prefix) : 0;
+		if (start < 0) return Stream.empty();
+
+		Iterator<List<T>> it = new Iterator<>() {
+			private int[] stack = {start};
+			private int depth = 1;
+			private int next = advance();
+
+			private int advance() {
+				while (depth > 0) {
+					int node = stack[--depth];
+
+					int from = children.get(node), to = children.get(node + 1);
+					if (depth + to - from > stack.length) stack = Arrays.copyOf(stack, Math.max(stack.length * 2, depth + to - from));
+					for (int child = to - 1; child >= from; child--) stack[depth++] = child;
+
+					if (terminal(node)) return node;
+				}
+				return -1;
+			}
+
+			@Override
+			public boolean hasNext() {
+				return next >= 0;
+			}
+			@Override
+			public List<T> next() {
+				if (next < 0) throw new NoSuchElementException();
+
+				int result = next;
+				next = advance();
+				return value(result);
+			}
+		};
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(it, Spliterator.NONNULL), false);
+	}
+
+	/** @return number of nodes in this trie, excluding the root */
+	public int size() {
+		return size;
+	}
+
+	private int find(Iterable<T> value) {
+		Iterator<T> it = value.iterator();
+		if (!it.hasNext()) return -1;
+
+		int node = 0;
+		while (it.hasNext() && (node = child(node, it.next())) >= 0) ;
+		return node;
+	}
+	private int child(int node, Object element) {
+		int from = children.get(node), to = children.get(node + 1);
+		int hash = Objects.hashCode(element);
+
+		int low = from, high = to - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			int midHash = hashes.get(mid);
+
+			if (midHash < hash) low = mid + 1;
+			else if (midHash > hash) high = mid - 1;
+			else {
+				// equal hashes are adjacent; scan both directions from the found one
+				for (int j = mid; j >= from && hashes.get(j) == hash; j--) {
+					if (Objects.equals(label(j), element)) return j;
+				}
+				for (int j = mid + 1; j < to && hashes.get(j) == hash; j++) {
+					if (Objects.equals(label(j), element)) return j;
+				}
+				return -1;
+			}
+		}
+		return -1;
+	}
+
+	private T label(int node) {
+		int offset = offsets.get(node);
+		return codec.decode(labels.slice(offset, offsets.get(node + 1) - offset));
+	}
+	private boolean terminal(int node) {
+		return (terminals.get(node / Long.SIZE) & (1L << node)) != 0;
+	}
+
+	private List<T> value(int node) {
+		int depth = 0;
+		for (int i = node; i > 0; i = parents.get(i)) depth++;
+
+		Object[] value = new Object[depth];
+		for (int i = node; i > 0; i = parents.get(i)) {
+			value[--depth] = label(i);
+		}
+		return (List<T>) unmodifiableList(Arrays.asList(value));
+	}
+
+	/**
+	 * Writes consecutive values to a file channel from a given position through a small buffer.
+	 */
+	private static final class SectionWriter {
+		private final FileChannel channel;
+		private long position;
+		private final ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+
+		SectionWriter(FileChannel channel, long position) {
+			this.channel = channel;
+			this.position = position;
+		}
+
+		SectionWriter putInt(int value) throws IOException {
+			if (buffer.remaining() < Integer.BYTES) flush();
+			buffer.putInt(value);
+			return this;
+		}
+		SectionWriter putLong(long value) throws IOException {
+			if (buffer.remaining() < Long.BYTES) flush();
+			buffer.putLong(value);
+			return this;
+		}
+		SectionWriter put(byte[] bytes) throws IOException {
+			for (int i = 0; i < bytes.length; ) {
+				if (!buffer.hasRemaining()) flush();
+
+				int length = Math.min(buffer.remaining(), bytes.length - i);
+				buffer.put(bytes, i, length);
+				i += length;
+			}
+			return this;
+		}
+
+		void flush() throws IOException {
+			buffer.flip();
+			while (buffer.hasRemaining()) {
+				position += channel.write(buffer, position);
+			}
+			buffer.clear();
+		}
+	}
+
+	/**
+	 * A view of a single node in a {@link MappedTrie}.
+	 * Views compare equal if they refer to the same node of the same trie.
+	 */
+	public final class Node {
+		private final int id;
+
+		private Node(int id) {
+			this.id = id;
+		}
+
+		/**
+		 * @param element element to check
+		 * @return whether this node contains a child node at {@code element}
+		 */
+		public boolean contains(T element) {
+			return child(id, element) >= 0;
+		}
+
+		/**
+		 * @param element element to get child node for
+		 * @return child node at {@code element}, or {@code null} if no such node
+		 */
+		public Node get(T element) {
+			int child = child(id, element);
+			return child >= 0 ? new Node(child) : null;
+		}
+
+		/** @return keys of child nodes */
+		public List<T> getKeys() {
+			List<T> keys = new ArrayList<>();
+			for (int child = children.get(id); child < children.get(id + 1); child++) keys.add(label(child));
+			return unmodifiableList(keys);
+		}
+
+		/** @return full node value */
+		public List<T> getValue() {
+			return value(id);
+		}
+
+		/** @return whether this node represents a complete value */
+		public boolean isTerminal() {
+			return terminal(id);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) return true;
+			if (obj == null || getClass() != obj.getClass()) return false;
+			Node o = (Node) obj;
+			return id == o.id && trie() == o.trie();
+		}
+		@Override
+		public int hashCode() {
+			return 31 * System.identityHashCode(trie()) + id;
+		}
+
+		private MappedTrie<T> trie() {
+			return MappedTrie.this;
+		}
+	}
+
+	/**
+	 * Converts trie elements to and from bytes.
+	 * @param <T> element type
+	 */
+	public interface Codec<T> {
+		/** Codec for {@link Character} elements. */
+		Codec<Character> CHARACTERS = new Codec<>() {
+			@Override
+			public void encode(Character element, DataOutput out) throws IOException {
+				out.writeChar(element);
+			}
+			@Override
+			public Character decode(ByteBuffer in) {
+				return in.getChar(0);
+			}
+		};
+		/** Codec for {@link Integer} elements. */
+		Codec<Integer> INTEGERS = new Codec<>() {
+			@Override
+			public void encode(Integer element, DataOutput out) throws IOException {
+				out.writeInt(element);
+			}
+			@Override
+			public Integer decode(ByteBuffer in) {
+				return in.getInt(0);
+			}
+		};
+		/** Codec for {@link String} elements, encoded as UTF-8. */
+		Codec<String> STRINGS = new Codec<>() {
+			@Override
+			public void encode(String element, DataOutput out) throws IOException {
+				out.write(element.getBytes(StandardCharsets.UTF_8));
+			}
+			@Override
+			public String decode(ByteBuffer in) {
+				byte[] bytes = new byte[in.remaining()];
+				in.get(0, bytes);
+				return new String(bytes, StandardCharsets.UTF_8);
+			}
+		};
+
+		/**
+		 * Writes the encoded form of an element.
+		 * @param element element to encode
+		 * @param out output to write to
+		 * @throws IOException if an I/O error occurs
+		 */
+		void encode(T element, DataOutput out) throws IOException;
+		/**
+		 * @param in buffer containing exactly the bytes written by {@link #encode(Object, DataOutput)} for a single element, starting at index {@code 0}
+		 * @return decoded element
+		 */
+		T decode(ByteBuffer in);
+	}
+}
@@ -0,0 +1,235 @@
+package dev.kkorolyov.flub.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import static dev.kkorolyov.flub.collections.Iterables.append;
+import static java.util.Collections.emptySet;
+import static java.util.Collections.singleton;
+import static java.util.Collections.unmodifiableList;
+
+/**
+ * A path-compressed variant of {@link Trie}.
+ * Each chain of nodes with a single child and no terminal value is collapsed into one edge labeled with the chain's elements, so long unbranched values cost a single edge rather than a node per element.
+ * Node values are computed on demand from parent links rather than stored.
+ * @param <T> element type
+ */
+public final class RadixTrie<T> {
+	private static final Object[] EMPTY = new Object[0];
+
+	private final Edge root = new Edge(null, EMPTY);
+
+	/** @see #contains(Iterable) */
+	public boolean contains(T element, T... elements) {
+		return contains(append(singleton(element), elements));
+	}
+	/** @see #contains(Iterable) */
+	public boolean contains(T[] value) {
+		return contains(Arrays.asList(value));
+	}
+	/**
+	 * @param value value to check
+	 * @return whether this trie contains {@code value} at a terminal node
+	 */
+	public boolean contains(Iterable<T> value) {
+		Node node = get(value);
+		return node != null && node.isTerminal();
+	}
+
+	/** @see #get(Iterable) */
+	public Node get(T element, T... elements) {
+		return get(append(singleton(element), elements));
+	}
+	/** @see #get(Iterable) */
+	public Node get(T[] value) {
+		return get(Arrays.asList(value));
+	}
+	/**
+	 * @param value value to get node for
+	 * @return node located by traversing the elements of {@code value} in this trie, or {@code null} if no such node
+	 */
+	public Node get(Iterable<T> value) {
+		Iterator<T> it = value.iterator();
+
+		if (!it.hasNext()) return null;
+
+		Edge edge = root;
+		int depth = 0;
+		while (it.hasNext()) {
+			T element = it.next();
+			if (depth < edge.label.length) {
+				if (!Objects.equals(edge.label[depth], element)) return null;
+				depth++;
+			} else {
+				edge = edge.get(element);
+				if (edge == null) return null;
+				depth = 1;
+			}
+		}
+		return new Node(edge, depth);
+	}
+
+	/** @see #add(Iterable) */
+	public RadixTrie<T> add(T element, T... elements) {
+		return add(append(singleton(element), elements));
+	}
+	/** @see #add(Iterable) */
+	public RadixTrie<T> add(T[] value) {
+		return add(Arrays.asList(value));
+	}
+	/**
+	 * Adds a complete value to this trie.
+	 * @param value value to add
+	 * @return {@code this}
+	 */
+	public RadixTrie<T> add(Iterable<T> value) {
+		Iterator<T> it = value.iterator();
+		if (!it.hasNext()) return this;
+
+		Edge edge = root;
+		int depth = 0;
+		while (it.hasNext()) {
+			T element = it.next();
+			if (depth < edge.label.length) {
+				if (Objects.equals(edge.label[depth], element)) {
+					depth++;
+					continue;
+				}
+				edge = edge.split(depth);
+			}
+
+			Edge child = edge.get(element);
+			if (child != null) {
+				edge = child;
+				depth = 1;
+			} else {
+				List<Object> label = new ArrayList<>();
+				label.add(element);
+				it.forEachRemaining(label::add);
+
+				edge = edge.put(new Edge(edge, label.toArray()));
+				depth = edge.label.length;
+			}
+		}
+		if (depth < edge.label.length) edge = edge.split(depth);
+		edge.terminal = true;
+
+		return this;
+	}
+
+	/**
+	 * A labeled edge and the physical node at its end.
+	 */
+	private final class Edge {
+		private Edge parent;
+		private Object[] label;
+		private Map<T, Edge> children;
+		private boolean terminal;
+
+		Edge(Edge parent, Object[] label) {
+			this.parent = parent;
+			this.label = label;
+		}
+
+		Edge get(T element) {
+			return children != null ? children.get(element) : null;
+		}
+		Edge put(Edge child) {
+			if (children == null) children = new HashMap<>(2);
+			children.put((T) child.label[0], child);
+			return child;
+		}
+
+		/**
+		 * Splits this edge after its first {@code depth} label elements.
+		 * @return new edge with the first {@code depth} label elements, whose only child is this edge with the remaining elements
+		 */
+		Edge split(int depth) {
+			Edge prefix = new Edge(parent, Arrays.copyOf(label, depth));
+			parent.put(prefix);
+
+			parent = prefix;
+			label = Arrays.copyOfRange(label, depth, label.length);
+			prefix.put(this);
+
+			return prefix;
+		}
+	}
+
+	/**
+	 * A view of a position in a {@link RadixTrie}, equivalent to a {@link Trie.Node}.
+	 * A position may fall inside an edge label, in which case its only child is the next label element.
+	 * Positions are created on each lookup and compare equal if they refer to the same position.
+	 */
+	public final class Node {
+		private final Edge edge;
+		private final int depth;
+
+		private Node(Edge edge, int depth) {
+			this.edge = edge;
+			this.depth = depth;
+		}
+
+		/**
+		 * @param element element to check
+		 * @return whether this node contains a child node at {@code element}
+		 */
+		public boolean contains(T element) {
+			return get(element) != null;
+		}
+
+		/**
+		 * @param element element to get child node for
+		 * @return child node at {@code element}, or {@code null} if no such node
+		 */
+		public Node get(T element) {
+			if (depth < edge.label.length) {
+				return Objects.equals(edge.label[depth], element) ? new Node(edge, depth + 1) : null;
+			}
+			Edge child = edge.get(element);
+			return child != null ? new Node(child, 1) : null;
+		}
+
+		/** @return keys of child nodes */
+		public Collection<T> getKeys() {
+			if (depth < edge.label.length) return singleton((T) edge.label[depth]);
+			return edge.children != null ? edge.children.keySet() : emptySet();
+		}
+
+		/** @return full node value */
+		public List<T> getValue() {
+			int length = depth;
+			for (Edge e = edge.parent; e != null; e = e.parent) length += e.label.length;
+
+			Object[] value = new Object[length];
+			System.arraycopy(edge.label, 0, value, length -= depth, depth);
+			for (Edge e = edge.parent; e != null; e = e.parent) {
+				System.arraycopy(e.label, 0, value, length -= e.label.length, e.label.length);
+			}
+			return (List<T>) unmodifiableList(Arrays.asList(value));
+		}
+
+		/** @return whether this node represents a complete value */
+		public boolean isTerminal() {
+			return depth == edge.label.length && edge.terminal;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) return true;
+			if (obj == null || getClass() != obj.getClass()) return false;
+			Node o = (Node) obj;
+			return edge == o.edge && depth == o.depth;
+		}
+		@Override
+		public int hashCode() {
+			return 31 * System.identityHashCode(edge) + depth;
+		}
+	}
+}
@@ -0,0 +1,815 @@
+package dev.kkorolyov.flub.data;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+import java.util.stream.StreamSupport;
+
+/**
+ * A compressed set of non-negative {@code int}s.
+ * Values are partitioned into chunks of {@code 2^16} by their high 16 bits, and each non-empty chunk is stored in whichever of a sorted array, bitmap, or run-length container suits its contents.
+ * Empty chunks are not stored at all, so binary operations skip them entirely.
+ */
+final class RoaringBitSet {
+	private static final int ARRAY_MAX = 4096;
+	private static final int WORDS = 1024;
+
+	private char[] keys = new char[0];
+	private Container[] containers = new Container[0];
+	private int size;
+
+	/**
+	 * @param i value to check
+	 * @return whether {@code i} is in this set
+	 */
+	boolean get(int i) {
+		int index = indexOf(high(i));
+		return index >= 0 && containers[index].contains(low(i));
+	}
+
+	/**
+	 * Adds {@code i} to this set.
+	 * @return whether this set changed as a result
+	 */
+	boolean set(int i) {
+		char high = high(i);
+		int index = indexOf(high);
+		if (index >= 0) {
+			Container container = containers[index];
+			if (container.contains(low(i))) return false;
+			containers[index] = container.add(low(i));
+		} else {
+			insert(-index - 1, high, new ArrayContainer().add(low(i)));
+		}
+		return true;
+	}
+	/**
+	 * Adds all values in range {@code [from, to)} to this set.
+	 */
+	void set(int from, int to) {
+		while (from < to) {
+			char high = high(from);
+			int end = (int) Math.min(to, (high + 1L) << 16);
+
+			Container range = new RunContainer(low(from), low(end - 1));
+			int index = indexOf(high);
+			if (index >= 0) {
+				containers[index] = containers[index].or(range);
+			} else {
+				insert(-index - 1, high, range);
+			}
+			from = end;
+		}
+	}
+
+	/**
+	 * Removes {@code i} from this set.
+	 * @return whether this set changed as a result
+	 */
+	boolean clear(int i) {
+		int index = indexOf(high(i));
+		if (index < 0) return false;
+
+		Container container = containers[index];
+		if (!container.contains(low(i))) return false;
+
+		replace(index, container.remove(low(i)));
+		return true;
+	}
+	/**
+	 * Removes all values from this set.
+	 */
+	void clear() {
+		Arrays.fill(containers, 0, size, null);
+		size = 0;
+	}
+
+	/** @return number of values in this set */
+	int cardinality() {
+		int result = 0;
+		for (int i = 0; i < size; i++) {
+			result += containers[i].cardinality();
+		}
+		return result;
+	}
+	/**
+	 * @param i exclusive upper bound
+	 * @return number of values {@code < i} in this set
+	 */
+	int rank(int i) {
+		int index = indexOf(high(i));
+		int end = index >= 0 ? index : -index - 1;
+
+		int result = 0;
+		for (int j = 0; j < end; j++) {
+			result += containers[j].cardinality();
+		}
+		if (index >= 0) result += containers[index].rank(low(i));
+		return result;
+	}
+	/** @return whether this set contains no values */
+	boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * @param from minimum value to return
+	 * @return smallest value {@code >= from} in this set, or {@code -1} if no such value
+	 */
+	int nextSetBit(int from) {
+		if (from < 0) from = 0;
+
+		int index = indexOf(high(from));
+		if (index >= 0) {
+			int next = containers[index].next(low(from));
+			if (next >= 0) return keys[index] << 16 | next;
+			index++;
+		} else {
+			index = -index - 1;
+		}
+		return index < size ? keys[index] << 16 | containers[index].next(0) : -1;
+	}
+
+	/**
+	 * Retains only values also contained in {@code other}.
+	 */
+	void and(RoaringBitSet other) {
+		int length = 0;
+		for (int i = 0, j = 0; i < size && j < other.size; ) {
+			if (keys[i] < other.keys[j]) {
+				i++;
+			} else if (keys[i] > other.keys[j]) {
+				j++;
+			} else {
+				Container result = containers[i].and(other.containers[j]);
+				if (result != null) {
+					keys[length] = keys[i];
+					containers[length++] = result;
+				}
+				i++;
+				j++;
+			}
+		}
+		Arrays.fill(containers, length, size, null);
+		size = length;
+	}
+	/**
+	 * Removes all values contained in {@code other}.
+	 */
+	void andNot(RoaringBitSet other) {
+		int length = 0;
+		for (int i = 0, j = 0; i < size; i++) {
+			while (j < other.size && other.keys[j] < keys[i]) j++;
+
+			Container result = j < other.size && other.keys[j] == keys[i]
+					? containers[i].andNot(other.containers[j])
+					: containers[i];
+			if (result != null) {
+				keys[length] = keys[i];
+				containers[length++] = result;
+			}
+		}
+		Arrays.fill(containers, length, size, null);
+		size = length;
+	}
+	/**
+	 * Adds all values contained in {@code other}.
+	 */
+	void or(RoaringBitSet other) {
+		char[] resultKeys = new char[size + other.size];
+		Container[] resultContainers = new Container[resultKeys.length];
+
+		int length = 0;
+		int i = 0, j = 0;
+		while (i < size || j < other.size) {
+			if (j >= other.size || (i < size && keys[i] < other.keys[j])) {
+				resultKeys[length] = keys[i];
+				resultContainers[length++] = containers[i++];
+			} else if (i >= size || keys[i] > other.keys[j]) {
+				resultKeys[length] = other.keys[j];
+				resultContainers[length++] = other.containers[j++].copy();
+			} else {
+				resultKeys[length] = keys[i];
+				resultContainers[length++] = containers[i++].or(other.containers[j++]);
+			}
+		}
+		keys = resultKeys;
+		containers = resultContainers;
+		size = length;
+	}
+
+	/**
+	 * Converts each chunk to its most compact container representation and releases excess capacity.
+	 */
+	void optimize() {
+		for (int i = 0; i < size; i++) {
+			containers[i] = containers[i].optimize();
+		}
+		keys = Arrays.copyOf(keys, size);
+		containers = Arrays.copyOf(containers, size);
+	}
+
+	/** @return independent copy of this set */
+	RoaringBitSet copy() {
+		RoaringBitSet result = new RoaringBitSet();
+		result.keys = Arrays.copyOf(keys, size);
+		result.containers = new Container[size];
+		for (int i = 0; i < size; i++) {
+			result.containers[i] = containers[i].copy();
+		}
+		result.size = size;
+		return result;
+	}
+
+	/**
+	 * Invokes {@code action} on each value in this set in ascending order.
+	 */
+	void forEach(IntConsumer action) {
+		for (int i = 0; i < size; i++) {
+			containers[i].forEach(keys[i] << 16, action);
+		}
+	}
+
+	/** @return iterator over values in this set in ascending order */
+	PrimitiveIterator.OfInt iterator() {
+		return new PrimitiveIterator.OfInt() {
+			private int next = nextSetBit(0);
+
+			@Override
+			public boolean hasNext() {
+				return next >= 0;
+			}
+			@Override
+			public int nextInt() {
+				if (next < 0) throw new NoSuchElementException();
+
+				int result = next;
+				next = result == Integer.MAX_VALUE ? -1 : nextSetBit(result + 1);
+				return result;
+			}
+		};
+	}
+	/**
+	 * Returns a spliterator over values in this set in range {@code [from, to)}.
+	 * The spliterator splits on word-aligned boundaries and reports exact sizes for itself and all its splits.
+	 */
+	Spliterator.OfInt spliterator(int from, int to) {
+		return new RangeSpliterator(from, to, rank(to) - rank(from));
+	}
+	/** @return stream of values in this set in ascending order */
+	IntStream stream() {
+		return StreamSupport.intStream(Spliterators.spliterator(iterator(), cardinality(), Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.SORTED | Spliterator.NONNULL), false);
+	}
+
+	private int indexOf(char high) {
+		return Arrays.binarySearch(keys, 0, size, high);
+	}
+	private void insert(int index, char high, Container container) {
+		if (size == keys.length) {
+			int capacity = Math.max(4, size * 2);
+			keys = Arrays.copyOf(keys, capacity);
+			containers = Arrays.copyOf(containers, capacity);
+		}
+		System.arraycopy(keys, index, keys, index + 1, size - index);
+		System.arraycopy(containers, index, containers, index + 1, size - index);
+		keys[index] = high;
+		containers[index] = container;
+		size++;
+	}
+	private void replace(int index, Container container) {
+		if (container.cardinality() > 0) {
+			containers[index] = container;
+		} else {
+			System.arraycopy(keys, index + 1, keys, index, size - index - 1);
+			System.arraycopy(containers, index + 1, containers, index, size - index - 1);
+			containers[--size] = null;
+		}
+	}
+
+	private static char high(int i) {
+		return (char) (i >>> 16);
+	}
+	private static char low(int i) {
+		return (char) i;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) return true;
+		if (obj == null || getClass() != obj.getClass()) return false;
+		RoaringBitSet o = (RoaringBitSet) obj;
+		if (size != o.size) return false;
+
+		for (int i = 0; i < size; i++) {
+			if (keys[i] != o.keys[i] || !Arrays.equals(containers[i].words(), o.containers[i].words())) return false;
+		}
+		return true;
+	}
+	@Override
+	public int hashCode() {
+		int[] result = {1};
+		forEach(i -> result[0] = 31 * result[0] + i);
+		return result[0];
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder("{");
+		forEach(i -> {
+			if (builder.length() > 1) builder.append(", ");
+			builder.append(i);
+		});
+		return builder.append('}').toString();
+	}
+
+	private final class RangeSpliterator implements Spliterator.OfInt {
+		private static final int MIN_SPLIT = 1 << 10;
+
+		private int from;
+		private final int to;
+		private int size;
+
+		RangeSpliterator(int from, int to, int size) {
+			this.from = from;
+			this.to = to;
+			this.size = size;
+		}
+
+		@Override
+		public OfInt trySplit() {
+			if (size < MIN_SPLIT) return null;
+
+			int mid = (from + (to - from) / 2) & ~63;
+			if (mid <= from) return null;
+
+			int prefixSize = rank(mid) - rank(from);
+			RangeSpliterator prefix = new RangeSpliterator(from, mid, prefixSize);
+			from = mid;
+			size -= prefixSize;
+			return prefix;
+		}
+
+		@Override
+		public boolean tryAdvance(IntConsumer action) {
+			int next = from < to ? nextSetBit(from) : -1;
+			if (next < 0 || next >= to) {
+				from = to;
+				size = 0;
+				return false;
+			}
+			from = next + 1;
+			size--;
+			action.accept(next);
+			return true;
+		}
+		@Override
+		public void forEachRemaining(IntConsumer action) {
+			for (int next = from < to ? nextSetBit(from) : -1; next >= 0 && next < to; next = next + 1 < to ? nextSetBit(next + 1) : -1) {
+				action.accept(next);
+			}
+			from = to;
+			size = 0;
+		}
+
+		@Override
+		public long estimateSize() {
+			return size;
+		}
+		@Override
+		public int characteristics() {
+			return ORDERED | DISTINCT | SORTED | NONNULL | SIZED | SUBSIZED;
+		}
+		@Override
+		public Comparator<? super Integer> getComparator() {
+			return null;
+		}
+	}
+
+	/**
+	 * Stores the low 16 bits of values sharing a chunk.
+	 * Binary operations may modify and return the receiver, but never modify or return the argument.
+	 * A binary operation returns {@code null} if its result is empty.
+	 */
+	private abstract static class Container {
+		abstract boolean contains(char value);
+		abstract Container add(char value);
+		abstract Container remove(char value);
+
+		abstract int cardinality();
+		/** @return number of values {@code < to} */
+		abstract int rank(int to);
+		/** @return smallest value {@code >= from}, or {@code -1} if no such value */
+		abstract int next(int from);
+		abstract void forEach(int base, IntConsumer action);
+
+		/** @return bitmap of this container's values; may be backing state, so must not be modified */
+		abstract long[] words();
+		/** @return modifiable bitmap of this container's values; may be backing state, so the receiver must not be used afterwards */
+		abstract long[] wordsCopy();
+		abstract Container copy();
+
+		Container and(Container other) {
+			if (other instanceof ArrayContainer array) return array.filter(this, true);
+
+			long[] result = wordsCopy();
+			WordKernel.INSTANCE.and(result, other.words());
+			return fromWords(result);
+		}
+		Container andNot(Container other) {
+			long[] result = wordsCopy();
+			if (other instanceof ArrayContainer array) {
+				for (int i = 0; i < array.size; i++) {
+					result[array.values[i] >>> 6] &= ~(1L << array.values[i]);
+				}
+			} else {
+				WordKernel.INSTANCE.andNot(result, other.words());
+			}
+			return fromWords(result);
+		}
+		Container or(Container other) {
+			long[] result = wordsCopy();
+			WordKernel.INSTANCE.or(result, other.words());
+			return fromWords(result);
+		}
+
+		/** @return smallest representation of this container's values */
+		Container optimize() {
+			long[] words = words();
+			int runs = 0;
+			for (int i = 0; i < WORDS; i++) {
+				long word = words[i];
+				runs += Long.bitCount(word & ~(word << 1));
+				if (i > 0 && (word & 1) != 0 && words[i - 1] < 0) runs--;
+			}
+			int cardinality = cardinality();
+
+			int runBytes = 2 + 4 * runs;
+			if (runBytes < Math.min(2 * cardinality, 2 * WORDS * 4)) return RunContainer.fromWords(words, runs);
+			return cardinality <= ARRAY_MAX ? ArrayContainer.fromWords(words, cardinality) : new BitmapContainer(words.clone(), cardinality);
+		}
+
+		static Container fromWords(long[] words) {
+			int cardinality = 0;
+			for (long word : words) {
+				cardinality += Long.bitCount(word);
+			}
+			if (cardinality == 0) return null;
+			return cardinality <= ARRAY_MAX ? ArrayContainer.fromWords(words, cardinality) : new BitmapContainer(words, cardinality);
+		}
+	}
+
+	private static final class ArrayContainer extends Container {
+		private char[] values;
+		private int size;
+
+		ArrayContainer() {
+			this(new char[4], 0);
+		}
+		private ArrayContainer(char[] values, int size) {
+			this.values = values;
+			this.size = size;
+		}
+
+		static ArrayContainer fromWords(long[] words, int cardinality) {
+			char[] values = new char[cardinality];
+			int size = 0;
+			for (int i = 0; i < WORDS; i++) {
+				for (long word = words[i]; word != 0; word &= word - 1) {
+					values[size++] = (char) (i << 6 | Long.numberOfTrailingZeros(word));
+				}
+			}
+			return new ArrayContainer(values, size);
+		}
+
+		@Override
+		boolean contains(char value) {
+			return Arrays.binarySearch(values, 0, size, value) >= 0;
+		}
+		@Override
+		Container add(char value) {
+			int index = Arrays.binarySearch(values, 0, size, value);
+			if (index >= 0) return this;
+			if (size >= ARRAY_MAX) return toBitmap().add(value);
+
+			index = -index - 1;
+			if (size == values.length) values = Arrays.copyOf(values, Math.min(ARRAY_MAX, size * 2));
+			System.arraycopy(values, index, values, index + 1, size - index);
+			values[index] = value;
+			size++;
+			return this;
+		}
+		@Override
+		Container remove(char value) {
+			int index = Arrays.binarySearch(values, 0, size, value);
+			if (index >= 0) {
+				System.arraycopy(values, index + 1, values, index, size - index - 1);
+				size--;
+			}
+			return this;
+		}
+
+		@Override
+		int cardinality() {
+			return size;
+		}
+		@Override
+		int rank(int to) {
+			int index = Arrays.binarySearch(values, 0, size, (char) to);
+			return index >= 0 ? index : -index - 1;
+		}
+		@Override
+		int next(int from) {
+			int index = Arrays.binarySearch(values, 0, size, (char) from);
+			if (index < 0) index = -index - 1;
+			return index < size ? values[index] : -1;
+		}
+		@Override
+		void forEach(int base, IntConsumer action) {
+			for (int i = 0; i < size; i++) {
+				action.accept(base | values[i]);
+			}
+		}
+
+		@Override
+		long[] words() {
+			long[] words = new long[WORDS];
+			for (int i = 0; i < size; i++) {
+				words[values[i] >>> 6] |= 1L << values[i];
+			}
+			return words;
+		}
+		@Override
+		long[] wordsCopy() {
+			return words();
+		}
+		@Override
+		Container copy() {
+			return new ArrayContainer(Arrays.copyOf(values, size), size);
+		}
+
+		@Override
+		Container and(Container other) {
+			return filter(other, true);
+		}
+		@Override
+		Container andNot(Container other) {
+			return filter(other, false);
+		}
+		@Override
+		Container or(Container other) {
+			if (other instanceof ArrayContainer array && size + array.size <= ARRAY_MAX) {
+				char[] result = new char[size + array.size];
+				int length = 0;
+				int i = 0, j = 0;
+				while (i < size || j < array.size) {
+					if (j >= array.size || (i < size && values[i] < array.values[j])) {
+						result[length++] = values[i++];
+					} else if (i >= size || values[i] > array.values[j]) {
+						result[length++] = array.values[j++];
+					} else {
+						result[length++] = values[i++];
+						j++;
+					}
+				}
+				return new ArrayContainer(result, length);
+			}
+			return super.or(other);
+		}
+
+		/**
+		 * @return container of values in this container which are contained in {@code other} if {@code keep}, else not contained in {@code other}
+		 */
+		Container filter(Container other, boolean keep) {
+			char[] result = new char[size];
+			int length = 0;
+			for (int i = 0; i < size; i++) {
+				if (other.contains(values[i]) == keep) result[length++] = values[i];
+			}
+			return length > 0 ? new ArrayContainer(result, length) : null;
+		}
+
+		private BitmapContainer toBitmap() {
+			return new BitmapContainer(words(), size);
+		}
+	}
+
+	private static final class BitmapContainer extends Container {
+		private final long[] words;
+		private int cardinality;
+
+		BitmapContainer(long[] words, int cardinality) {
+			this.words = words;
+			this.cardinality = cardinality;
+		}
+
+		@Override
+		boolean contains(char value) {
+			return (words[value >>> 6] & 1L << value) != 0;
+		}
+		@Override
+		Container add(char value) {
+			long word = words[value >>> 6];
+			long updated = word | 1L << value;
+			if (word != updated) {
+				words[value >>> 6] = updated;
+				cardinality++;
+			}
+			return this;
+		}
+		@Override
+		Container remove(char value) {
+			long word = words[value >>> 6];
+			long updated = word & ~(1L << value);
+			if (word != updated) {
+				words[value >>> 6] = updated;
+				cardinality--;
+			}
+			return cardinality <= ARRAY_MAX ? ArrayContainer.fromWords(words, cardinality) : this;
+		}
+
+		@Override
+		int cardinality() {
+			return cardinality;
+		}
+		@Override
+		int rank(int to) {
+			int result = 0;
+			int end = to >>> 6;
+			for (int i = 0; i < end; i++) {
+				result += Long.bitCount(words[i]);
+			}
+			if ((to & 63) != 0) result += Long.bitCount(words[end] & ~(-1L << to));
+			return result;
+		}
+		@Override
+		int next(int from) {
+			int i = from >>> 6;
+			long word = words[i] & (-1L << from);
+			while (word == 0) {
+				if (++i >= WORDS) return -1;
+				word = words[i];
+			}
+			return i << 6 | Long.numberOfTrailingZeros(word);
+		}
+		@Override
+		void forEach(int base, IntConsumer action) {
+			for (int i = 0; i < WORDS; i++) {
+				for (long word = words[i]; word != 0; word &= word - 1) {
+					action.accept(base | i << 6 | Long.numberOfTrailingZeros(word));
+				}
+			}
+		}
+
+		@Override
+		long[] words() {
+			return words;
+		}
+		@Override
+		long[] wordsCopy() {
+			return words;
+		}
+		@Override
+		Container copy() {
+			return new BitmapContainer(words.clone(), cardinality);
+		}
+	}
+
+	/**
+	 * Stores sorted, non-overlapping, non-adjacent runs of consecutive values as {@code (start, length - 1)} pairs.
+	 * Modifications convert to an array or bitmap container.
+	 */
+	private static final class RunContainer extends Container {
+		private final char[] runs;
+		private final int count;
+
+		RunContainer(char start, char end) {
+			this(new char[]{start, (char) (end - start)}, 1);
+		}
+		private RunContainer(char[] runs, int count) {
+			this.runs = runs;
+			this.count = count;
+		}
+
+		static RunContainer fromWords(long[] words, int count) {
+			char[] runs = new char[count * 2];
+			int length = 0;
+			int start = -1;
+			for (int i = 0; i <= WORDS * 64; i++) {
+				boolean set = i < WORDS * 64 && (words[i >>> 6] & 1L << i) != 0;
+				if (set && start < 0) {
+					start = i;
+				} else if (!set && start >= 0) {
+					runs[length++] = (char) start;
+					runs[length++] = (char) (i - 1 - start);
+					start = -1;
+				}
+			}
+			return new RunContainer(runs, count);
+		}
+
+		@Override
+		boolean contains(char value) {
+			int index = runIndex(value);
+			return index >= 0 && value <= end(index);
+		}
+		@Override
+		Container add(char value) {
+			return contains(value) ? this : toMutable().add(value);
+		}
+		@Override
+		Container remove(char value) {
+			return contains(value) ? toMutable().remove(value) : this;
+		}
+
+		@Override
+		int cardinality() {
+			int result = 0;
+			for (int i = 0; i < count; i++) {
+				result += runs[2 * i + 1] + 1;
+			}
+			return result;
+		}
+		@Override
+		int rank(int to) {
+			int result = 0;
+			for (int i = 0; i < count && runs[2 * i] < to; i++) {
+				result += Math.min(end(i), to - 1) - runs[2 * i] + 1;
+			}
+			return result;
+		}
+		@Override
+		int next(int from) {
+			int index = runIndex(from);
+			if (index >= 0 && from <= end(index)) return from;
+			index++;
+			return index < count ? runs[2 * index] : -1;
+		}
+		@Override
+		void forEach(int base, IntConsumer action) {
+			for (int i = 0; i < count; i++) {
+				for (int value = runs[2 * i], end = end(i); value <= end; value++) {
+					action.accept(base | value);
+				}
+			}
+		}
+
+		@Override
+		long[] words() {
+			long[] words = new long[WORDS];
+			for (int i = 0; i < count; i++) {
+				int start = runs[2 * i];
+				int end = end(i) + 1;
+
+				int startWord = start >>> 6;
+				int endWord = (end - 1) >>> 6;
+				long startMask = -1L << start;
+				long endMask = -1L >>> -end;
+				if (startWord == endWord) {
+					words[startWord] |= startMask & endMask;
+				} else {
+					words[startWord] |= startMask;
+					Arrays.fill(words, startWord + 1, endWord, -1L);
+					words[endWord] |= endMask;
+				}
+			}
+			return words;
+		}
+		@Override
+		long[] wordsCopy() {
+			return words();
+		}
+		@Override
+		Container copy() {
+			return this;
+		}
+
+		/** @return index of the last run starting at or before {@code value}, or {@code -1} if no such run */
+		private int runIndex(int value) {
+			int low = 0;
+			int high = count - 1;
+			while (low <= high) {
+				int mid = (low + high) >>> 1;
+				if (runs[2 * mid] <= value) {
+					low = mid + 1;
+				} else {
+					high = mid - 1;
+				}
+			}
+			return high;
+		}
+		private int end(int index) {
+			return runs[2 * index] + runs[2 * index + 1];
+		}
+
+		private Container toMutable() {
+			long[] words = words();
+			int cardinality = cardinality();
+			return cardinality <= ARRAY_MAX ? ArrayContainer.fromWords(words, cardinality) : new BitmapContainer(words, cardinality);
+		}
+	}
+}
@@ -0,0 +1,25 @@
+package dev.kkorolyov.flub.data;
+
+/**
+ * Word kernel using plain loops, left to the JIT to unroll or auto-vectorize.
+ */
+final class ScalarWordKernel implements WordKernel {
+	@Override
+	public void and(long[] words, long[] other) {
+		for (int i = 0; i < words.length; i++) {
+			words[i] &= other[i];
+		}
+	}
+	@Override
+	public void andNot(long[] words, long[] other) {
+		for (int i = 0; i < words.length; i++) {
+			words[i] &= ~other[i];
+		}
+	}
+	@Override
+	public void or(long[] words, long[] other) {
+		for (int i = 0; i < words.length; i++) {
+			words[i] |= other[i];
+		}
+	}
+}
@@ -2,25 +2,49 @@ package dev.kkorolyov.flub.data;
 
 import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.BitSet;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.PrimitiveIterator;
 import java.util.Queue;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.TreeMap;
+import java.util.function.ObjIntConsumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * A collection of {@code T} elements supporting multiple {@code K} keys/markers on individual elements.
  * Provides for efficient retrieval of all elements associated with a given subset of keys.
+ * Key associations are stored as compressed bitmaps, so rarely-used keys cost space proportional to their number of elements rather than to the size of this collection.
  */
 public final class SparseMultiset<T, K> implements Iterable<T> {
-	private final BitSet fullKey = new BitSet();
+	private static final int[] NO_IDS = new int[0];
 
 	private final List<T> dense = new ArrayList<>();
 	private final Queue<Integer> tombstones = new ArrayDeque<>();
+	private final RoaringBitSet live = new RoaringBitSet();
 
-	private final Map<K, BitSet> sparse = new HashMap<>();
+	private final Map<K, Integer> keyIds = new HashMap<>();
+	private final List<K> idKeys = new ArrayList<>();
+	private final List<RoaringBitSet> sparse = new ArrayList<>();
+	private final List<int[]> reverse = new ArrayList<>();
+
+	private final ColumnStore<K> columns = new ColumnStore<>();
+
+	/** Changes since the oldest retained checkpoint, in one epoch per checkpoint */
+	private final ArrayDeque<Epoch> epochs = new ArrayDeque<>(List.of(new Epoch(0)));
+	/** Number of unreleased retentions of each retained checkpoint */
+	private final TreeMap<Long, Integer> retained = new TreeMap<>();
+
+	private final List<Query> queries = new ArrayList<>();
 
 	/**
 	 * Returns the element at index {@code i}.
@@ -28,27 +52,142 @@ public final class SparseMultiset<T, K> implements Iterable<T> {
 	public T get(int i) {
 		return dense.get(i);
 	}
+	/**
+	 * Returns the columnar value store indexed by this multiset's element indexes.
+	 * A value in a key's column is reset when that key is removed from its element, or when its element is removed.
+	 */
+	public ColumnStore<K> columns() {
+		return columns;
+	}
+	/**
+	 * Returns all keys associated with the element at index {@code i}.
+	 */
+	public Set<K> keysOf(int i) {
+		int[] ids = reverse.get(i);
+		Set<K> result = new HashSet<>(ids.length);
+		for (int id : ids) {
+			result.add(idKeys.get(id));
+		}
+		return result;
+	}
 	/**
 	 * Returns all elements associated with all {@code keys}.
+	 * The result is computed into a bitmap private to this call, so this may be called concurrently with other reads.
 	 */
 	public Iterable<T> get(Iterable<? extends K> keys) {
-		fullKey.set(0, dense.size());
-
-		for (int i : tombstones) {
-			fullKey.clear(i);
-		}
-		for (K key : keys) {
-			BitSet bitSet = sparse.get(key);
-			if (bitSet != null) {
-				fullKey.and(bitSet);
-			} else {
-				fullKey.clear();
-			}
-		}
+		return get(new Filter<K>().all(keys));
+	}
+	/**
+	 * Returns all elements matching {@code filter}.
+	 * @see #get(Iterable)
+	 */
+	public Iterable<T> get(Filter<? extends K> filter) {
+		RoaringBitSet result = new Plan(filter).select();
 
-		return fullKey.stream()
+		return () -> result.stream()
 			.mapToObj(dense::get)
-			::iterator;
+			.iterator();
+	}
+
+	/**
+	 * Returns the indexes of all elements associated with all {@code keys}, in ascending order.
+	 * @see #get(Iterable)
+	 */
+	public PrimitiveIterator.OfInt indexes(Iterable<? extends K> keys) {
+		return indexes(new Filter<K>().all(keys));
+	}
+	/**
+	 * Returns the indexes of all elements matching {@code filter}, in ascending order.
+	 * @see #get(Filter)
+	 */
+	public PrimitiveIterator.OfInt indexes(Filter<? extends K> filter) {
+		return new Plan(filter).select().iterator();
+	}
+	/**
+	 * Sets {@code result} to exactly the indexes of all elements associated with all {@code keys}.
+	 * Reusing the same {@code result} across calls avoids allocating a new bitset per query.
+	 * @return {@code result}
+	 */
+	public BitSet indexes(Iterable<? extends K> keys, BitSet result) {
+		return indexes(new Filter<K>().all(keys), result);
+	}
+	/**
+	 * Sets {@code result} to exactly the indexes of all elements matching {@code filter}.
+	 * @return {@code result}
+	 * @see #indexes(Iterable, BitSet)
+	 */
+	public BitSet indexes(Filter<? extends K> filter, BitSet result) {
+		result.clear();
+		forEach(filter, (element, i) -> result.set(i));
+		return result;
+	}
+
+	/**
+	 * Invokes {@code action} on each element associated with all {@code keys} and its index, in ascending index order.
+	 * Iterates the smallest matching key bitmap and probes the rest, so no allocations are made per matched element.
+	 */
+	public void forEach(Iterable<? extends K> keys, ObjIntConsumer<? super T> action) {
+		forEach(new Filter<K>().all(keys), action);
+	}
+	/**
+	 * Invokes {@code action} on each element matching {@code filter} and its index, in ascending index order.
+	 * @see #forEach(Iterable, ObjIntConsumer)
+	 */
+	public void forEach(Filter<? extends K> filter, ObjIntConsumer<? super T> action) {
+		new Plan(filter).forEach(action);
+	}
+
+	/**
+	 * Returns a stream of all elements associated with all {@code keys}.
+	 * The stream is backed by a spliterator which splits the matching indexes by word ranges and reports exact sizes, so it parallelizes well.
+	 * @see #get(Iterable)
+	 */
+	public Stream<T> stream(Iterable<? extends K> keys) {
+		return stream(new Filter<K>().all(keys));
+	}
+	/**
+	 * Returns a stream of all elements matching {@code filter}.
+	 * @see #stream(Iterable)
+	 */
+	public Stream<T> stream(Filter<? extends K> filter) {
+		return stream(new Plan(filter).select(), false);
+	}
+	/**
+	 * Invokes {@code action} on each element associated with all {@code keys} and its index, in parallel.
+	 * No locks are held while invoking {@code action}, so this multiset must not be modified until this returns.
+	 * @see #forEach(Iterable, ObjIntConsumer)
+	 */
+	public void parallelForEach(Iterable<? extends K> keys, ObjIntConsumer<? super T> action) {
+		parallelForEach(new Filter<K>().all(keys), action);
+	}
+	/**
+	 * Invokes {@code action} on each element matching {@code filter} and its index, in parallel.
+	 * @see #parallelForEach(Iterable, ObjIntConsumer)
+	 */
+	public void parallelForEach(Filter<? extends K> filter, ObjIntConsumer<? super T> action) {
+		StreamSupport.intStream(new Plan(filter).select().spliterator(0, dense.size()), true)
+			.forEach(i -> action.accept(dense.get(i), i));
+	}
+	private Stream<T> stream(RoaringBitSet indexes, boolean parallel) {
+		return StreamSupport.intStream(indexes.spliterator(0, dense.size()), parallel)
+			.mapToObj(dense::get);
+	}
+
+	/**
+	 * Returns a reusable query for all elements associated with all {@code keys}.
+	 * The query caches its result and keeps it up to date as elements and key associations in this multiset change, so repeated iterations of the same key combination do no intersection work.
+	 * The query should be {@link Query#close() closed} once no longer needed.
+	 */
+	public Query query(Iterable<? extends K> keys) {
+		return query(new Filter<K>().all(keys));
+	}
+	/**
+	 * Returns a reusable query for all elements matching {@code filter}.
+	 * Subsequent changes to {@code filter} do not affect the returned query.
+	 * @see #query(Iterable)
+	 */
+	public Query query(Filter<? extends K> filter) {
+		return new Query(filter);
 	}
 
 	/**
@@ -67,6 +206,12 @@ public final class SparseMultiset<T, K> implements Iterable<T> {
 			dense.set(nextAvailable, element);
 		} else {
 			dense.add(element);
+			reverse.add(NO_IDS);
+		}
+		live.set(i);
+		epochs.getLast().elements().added.set(i);
+		for (Query query : queries) {
+			query.update(i);
 		}
 
 		return i;
@@ -78,8 +223,16 @@ public final class SparseMultiset<T, K> implements Iterable<T> {
 		boolean result = i >= 0 && i < dense.size() && dense.set(i, null) != null;
 		if (result) {
 			tombstones.add(i);
-			for (BitSet bitSet : sparse.values()) {
-				bitSet.clear(i);
+			live.clear(i);
+			for (int id : reverse.get(i)) {
+				sparse.get(id).clear(i);
+				epochs.getLast().key(id).removed.set(i);
+			}
+			reverse.set(i, NO_IDS);
+			columns.clear(i);
+			epochs.getLast().elements().removed.set(i);
+			for (Query query : queries) {
+				query.update(i);
 			}
 		}
 		return result;
@@ -87,30 +240,252 @@ public final class SparseMultiset<T, K> implements Iterable<T> {
 
 	/**
 	 * Associates {@code keys} with element at index {@code i}.
+	 * @throws IndexOutOfBoundsException if there is no element at index {@code i}
 	 */
 	public void put(int i, Iterable<? extends K> keys) {
+		checkIndex(i);
+
+		int[] ids = reverse.get(i);
 		for (K key : keys) {
-			BitSet bitSet = sparse.get(key);
-			if (bitSet == null) {
-				bitSet = new BitSet(dense.size());
-				sparse.put(key, bitSet);
+			int id = intern(key);
+			if (sparse.get(id).set(i)) {
+				ids = insert(ids, id);
+				epochs.getLast().key(id).added.set(i);
 			}
-			bitSet.set(i);
+		}
+		reverse.set(i, ids);
+		for (Query query : queries) {
+			query.update(i);
 		}
 	}
 	/**
 	 * Removes associations to {@code keys} for element at index {@code i}.
+	 * @throws IndexOutOfBoundsException if there is no element at index {@code i}
 	 */
 	public void remove(int i, Iterable<? extends K> keys) {
+		checkIndex(i);
+
+		int[] ids = reverse.get(i);
 		for (K key : keys) {
-			BitSet bitSet = sparse.get(key);
-			if (bitSet != null) bitSet.clear(i);
+			Integer id = keyIds.get(key);
+			if (id != null && sparse.get(id).clear(i)) {
+				ids = delete(ids, id);
+				columns.clear(i, key);
+				epochs.getLast().key(id).removed.set(i);
+			}
+		}
+		reverse.set(i, ids);
+		for (Query query : queries) {
+			query.update(i);
+		}
+	}
+	private void checkIndex(int i) {
+		if (i < 0 || i >= dense.size() || !live.get(i)) throw new IndexOutOfBoundsException("no element at index " + i);
+	}
+
+	/**
+	 * Retains and returns a checkpoint of the current state of this multiset.
+	 * Changes made after this call are reported by {@link #changedSince(long, Iterable)} and related queries until the checkpoint is {@link #release(long) released}.
+	 * Each consumer of changes may retain its own checkpoints independently of others.
+	 * @return retained checkpoint
+	 */
+	public long checkpoint() {
+		Epoch current = epochs.getLast();
+		if (current.changed) epochs.addLast(current = new Epoch(current.checkpoint + 1));
+
+		retained.merge(current.checkpoint, 1, Integer::sum);
+		trim();
+		return current.checkpoint;
+	}
+	/**
+	 * Releases a checkpoint retained by {@link #checkpoint()}.
+	 * Changes are discarded once no checkpoint retained before them remains.
+	 * @param checkpoint checkpoint to release
+	 * @throws IllegalArgumentException if {@code checkpoint} is not retained
+	 */
+	public void release(long checkpoint) {
+		Integer count = retained.get(checkpoint);
+		if (count == null) throw new IllegalArgumentException("checkpoint " + checkpoint + " is not retained");
+
+		if (count > 1) retained.put(checkpoint, count - 1);
+		else retained.remove(checkpoint);
+		trim();
+	}
+	/**
+	 * Discards all recorded changes and releases all checkpoints, then retains a new checkpoint.
+	 * Suits a single consumer of changes, which may call this instead of pairing {@link #checkpoint()} with {@link #release(long)}.
+	 * @return new retained checkpoint
+	 */
+	public long clearChanges() {
+		discardChanges();
+		return checkpoint();
+	}
+	private void discardChanges() {
+		long next = epochs.getLast().checkpoint + 1;
+		epochs.clear();
+		epochs.add(new Epoch(next));
+		retained.clear();
+	}
+	/** Discards epochs before the oldest retained checkpoint. */
+	private void trim() {
+		long oldest = retained.isEmpty() ? epochs.getLast().checkpoint : retained.firstKey();
+		while (epochs.getFirst().checkpoint < oldest) {
+			epochs.removeFirst();
 		}
 	}
 
+	/**
+	 * Returns the indexes of elements whose associations with any of {@code keys} were added or removed since {@code checkpoint}, in ascending order.
+	 * If {@code keys} is empty, returns the indexes of elements themselves added or removed.
+	 * An index may have changed in several ways, so callers should check its current state.
+	 * Costs time proportional to the changes since {@code checkpoint}, rather than to the number of elements.
+	 * @throws IllegalArgumentException if changes since {@code checkpoint} were discarded
+	 */
+	public PrimitiveIterator.OfInt changedSince(long checkpoint, Iterable<? extends K> keys) {
+		RoaringBitSet result = changes(checkpoint, keys, true);
+		result.or(changes(checkpoint, keys, false));
+		return result.iterator();
+	}
+	/**
+	 * Returns the indexes of elements which gained an association with any of {@code keys} since {@code checkpoint}, in ascending order.
+	 * @see #changedSince(long, Iterable)
+	 */
+	public PrimitiveIterator.OfInt addedSince(long checkpoint, Iterable<? extends K> keys) {
+		return changes(checkpoint, keys, true).iterator();
+	}
+	/**
+	 * Returns the indexes of elements which lost an association with any of {@code keys} since {@code checkpoint}, in ascending order.
+	 * @see #changedSince(long, Iterable)
+	 */
+	public PrimitiveIterator.OfInt removedSince(long checkpoint, Iterable<? extends K> keys) {
+		return changes(checkpoint, keys, false).iterator();
+	}
+	private RoaringBitSet changes(long checkpoint, Iterable<? extends K> keys, boolean added) {
+		if (checkpoint < epochs.getFirst().checkpoint || checkpoint > epochs.getLast().checkpoint) throw new IllegalArgumentException("changes since checkpoint " + checkpoint + " were discarded");
+
+		List<Integer> ids = new ArrayList<>();
+		boolean any = false;
+		for (K key : keys) {
+			any = true;
+			Integer id = keyIds.get(key);
+			if (id != null) ids.add(id);
+		}
+
+		RoaringBitSet result = new RoaringBitSet();
+		for (Epoch epoch : epochs) {
+			if (epoch.checkpoint < checkpoint) continue;
+
+			if (!any) {
+				if (epoch.elements != null) result.or(epoch.elements.get(added));
+			} else {
+				for (int id : ids) {
+					if (id < epoch.keys.length && epoch.keys[id] != null) result.or(epoch.keys[id].get(added));
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Relocates elements to fill all indexes freed by removed elements, so that elements occupy exactly indexes {@code [0, size)}.
+	 * Key bitmaps, {@link #columns() columns}, and open {@link Query queries} are updated accordingly, and all key bitmaps are {@link #optimize() optimized}.
+	 * Recorded changes are discarded and all checkpoints released, as their indexes would no longer be meaningful.
+	 * <p>
+	 * Callers must apply the returned mapping to any indexes they hold.
+	 * Compaction is worthwhile after heavy churn, when most queries would otherwise skip many freed indexes.
+	 * @return mapping of each index before compaction to its index after, or {@code -1} if no element existed at that index
+	 */
+	public int[] compact() {
+		int size = live.cardinality();
+
+		int[] mapping = new int[dense.size()];
+		Arrays.fill(mapping, -1);
+		for (int i = live.nextSetBit(0); i >= 0 && i < size; i = live.nextSetBit(i + 1)) {
+			mapping[i] = i;
+		}
+
+		int hole = 0;
+		for (int from = live.nextSetBit(size); from >= 0; from = live.nextSetBit(from + 1)) {
+			while (live.get(hole)) hole++;
+			int to = hole++;
+			mapping[from] = to;
+
+			dense.set(to, dense.get(from));
+			int[] ids = reverse.get(from);
+			reverse.set(to, ids);
+			for (int id : ids) {
+				RoaringBitSet bitSet = sparse.get(id);
+				bitSet.clear(from);
+				bitSet.set(to);
+			}
+			for (Query query : queries) {
+				if (query.result.clear(from)) query.result.set(to);
+			}
+		}
+
+		dense.subList(size, dense.size()).clear();
+		reverse.subList(size, reverse.size()).clear();
+		tombstones.clear();
+		live.clear();
+		live.set(0, size);
+
+		columns.remap(mapping, size);
+		optimize();
+		discardChanges();
+
+		return mapping;
+	}
+
+	/**
+	 * Converts each key's bitmap to its most compact representation.
+	 * Worthwhile after bulk modifications, particularly when keys are associated with long runs of consecutive indexes.
+	 */
+	public void optimize() {
+		for (RoaringBitSet bitSet : sparse) {
+			bitSet.optimize();
+		}
+	}
+
+	private RoaringBitSet elements(K key) {
+		Integer id = keyIds.get(key);
+		return id != null ? sparse.get(id) : null;
+	}
+	private int intern(K key) {
+		Integer id = keyIds.get(key);
+		if (id == null) {
+			id = idKeys.size();
+			keyIds.put(key, id);
+			idKeys.add(key);
+			sparse.add(new RoaringBitSet());
+		}
+		return id;
+	}
+
+	private static int[] insert(int[] ids, int id) {
+		int index = -Arrays.binarySearch(ids, id) - 1;
+		int[] result = new int[ids.length + 1];
+		System.arraycopy(ids, 0, result, 0, index);
+		result[index] = id;
+		System.arraycopy(ids, index, result, index + 1, ids.length - index);
+		return result;
+	}
+	private static int[] delete(int[] ids, int id) {
+		int index = Arrays.binarySearch(ids, id);
+		int[] result = new int[ids.length - 1];
+		System.arraycopy(ids, 0, result, 0, index);
+		System.arraycopy(ids, index + 1, result, index, result.length - index);
+		return result;
+	}
+
 	@Override
 	public Iterator<T> iterator() {
-		return dense.stream().filter(Objects::nonNull).iterator();
+		return live.stream()
+			.mapToObj(dense::get)
+			.iterator();
+	}
+	@Override
+	public Spliterator<T> spliterator() {
+		return stream(live.copy(), false).spliterator();
 	}
 
 	@Override
@@ -118,18 +493,355 @@ public final class SparseMultiset<T, K> implements Iterable<T> {
 		if (this == obj) return true;
 		if (obj == null || getClass() != obj.getClass()) return false;
 		SparseMultiset<?, ?> o = (SparseMultiset<?, ?>) obj;
-		return dense.equals(o.dense) && sparse.equals(o.sparse);
+		if (!dense.equals(o.dense)) return false;
+
+		for (int i = 0; i < reverse.size(); i++) {
+			int[] ids = reverse.get(i);
+			int[] otherIds = o.reverse.get(i);
+			if (ids.length != otherIds.length) return false;
+
+			for (int id : ids) {
+				Integer otherId = o.keyIds.get(idKeys.get(id));
+				if (otherId == null || Arrays.binarySearch(otherIds, otherId) < 0) return false;
+			}
+		}
+		return true;
 	}
 	@Override
 	public int hashCode() {
-		return Objects.hash(dense, sparse);
+		int result = dense.hashCode();
+		for (int i = 0; i < reverse.size(); i++) {
+			for (int id : reverse.get(i)) {
+				result += 31 * i ^ Objects.hashCode(idKeys.get(id));
+			}
+		}
+		return result;
 	}
 
 	@Override
 	public String toString() {
+		Map<K, RoaringBitSet> keyElements = new LinkedHashMap<>();
+		for (int id = 0; id < idKeys.size(); id++) {
+			keyElements.put(idKeys.get(id), sparse.get(id));
+		}
+
 		return "SparseMultiset{" +
 			"dense=" + dense +
-			", sparse=" + sparse +
+			", sparse=" + keyElements +
 			'}';
 	}
+
+	/**
+	 * Changes made from a checkpoint until the next checkpoint.
+	 */
+	private static final class Epoch {
+		final long checkpoint;
+		Changes elements;
+		Changes[] keys = new Changes[0];
+		boolean changed;
+
+		Epoch(long checkpoint) {
+			this.checkpoint = checkpoint;
+		}
+
+		Changes elements() {
+			changed = true;
+			if (elements == null) elements = new Changes();
+			return elements;
+		}
+		Changes key(int id) {
+			changed = true;
+			if (id >= keys.length) keys = Arrays.copyOf(keys, Math.max(id + 1, keys.length * 2));
+			if (keys[id] == null) keys[id] = new Changes();
+			return keys[id];
+		}
+	}
+	/**
+	 * Indexes added to and removed from a key or the element set.
+	 */
+	private static final class Changes {
+		final RoaringBitSet added = new RoaringBitSet();
+		final RoaringBitSet removed = new RoaringBitSet();
+
+		RoaringBitSet get(boolean added) {
+			return added ? this.added : removed;
+		}
+	}
+
+	/**
+	 * Resolves a filter against current key bitmaps.
+	 */
+	private final class Plan {
+		/** In ascending order of cardinality */
+		private final RoaringBitSet[] all;
+		private final RoaringBitSet[] none;
+		private final RoaringBitSet[][] any;
+		private final boolean empty;
+
+		Plan(Filter<? extends K> filter) {
+			boolean empty = false;
+
+			List<? extends K> allKeys = filter.all;
+			all = new RoaringBitSet[allKeys.size()];
+			int[] cardinalities = new int[all.length];
+			for (int i = 0; i < all.length; i++) {
+				RoaringBitSet bitSet = elements(allKeys.get(i));
+				int cardinality = bitSet != null ? bitSet.cardinality() : 0;
+				if (cardinality == 0) empty = true;
+
+				int j = i;
+				for (; j > 0 && cardinalities[j - 1] > cardinality; j--) {
+					all[j] = all[j - 1];
+					cardinalities[j] = cardinalities[j - 1];
+				}
+				all[j] = bitSet;
+				cardinalities[j] = cardinality;
+			}
+
+			none = resolve(filter.none);
+
+			any = new RoaringBitSet[filter.any.size()][];
+			for (int i = 0; i < any.length; i++) {
+				any[i] = resolve(filter.any.get(i));
+				if (any[i].length == 0) empty = true;
+			}
+
+			this.empty = empty;
+		}
+		/** @return bitmaps of all non-empty {@code keys} */
+		private RoaringBitSet[] resolve(List<? extends K> keys) {
+			List<RoaringBitSet> result = new ArrayList<>(keys.size());
+			for (K key : keys) {
+				RoaringBitSet bitSet = elements(key);
+				if (bitSet != null && !bitSet.isEmpty()) result.add(bitSet);
+			}
+			return result.toArray(new RoaringBitSet[0]);
+		}
+
+		/**
+		 * Intersects {@code all} bitmaps smallest first, then each union of {@code any} bitmaps, then subtracts {@code none} bitmaps, stopping early on an empty result.
+		 */
+		RoaringBitSet select() {
+			if (empty) return new RoaringBitSet();
+
+			RoaringBitSet result;
+			if (all.length > 0) {
+				result = all[0].copy();
+				for (int i = 1; i < all.length && !result.isEmpty(); i++) {
+					result.and(all[i]);
+				}
+			} else {
+				result = live.copy();
+			}
+			for (int i = 0; i < any.length && !result.isEmpty(); i++) {
+				RoaringBitSet union = any[i][0].copy();
+				for (int j = 1; j < any[i].length; j++) {
+					union.or(any[i][j]);
+				}
+				result.and(union);
+			}
+			for (int i = 0; i < none.length && !result.isEmpty(); i++) {
+				result.andNot(none[i]);
+			}
+			return result;
+		}
+
+		/**
+		 * Iterates the smallest {@code all} bitmap, or all live elements if none, and probes the remaining bitmaps for each.
+		 */
+		void forEach(ObjIntConsumer<? super T> action) {
+			if (empty) return;
+
+			if (all.length == 0) {
+				for (int i = live.nextSetBit(0); i >= 0; i = live.nextSetBit(i + 1)) {
+					if (matches(i)) action.accept(dense.get(i), i);
+				}
+			} else {
+				for (int i = all[0].nextSetBit(0); i >= 0; i = all[0].nextSetBit(i + 1)) {
+					if (matches(i)) action.accept(dense.get(i), i);
+				}
+			}
+		}
+		private boolean matches(int i) {
+			for (int j = 1; j < all.length; j++) {
+				if (!all[j].get(i)) return false;
+			}
+			for (RoaringBitSet bitSet : none) {
+				if (bitSet.get(i)) return false;
+			}
+			outer:
+			for (RoaringBitSet[] group : any) {
+				for (RoaringBitSet bitSet : group) {
+					if (bitSet.get(i)) continue outer;
+				}
+				return false;
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * An expression selecting elements by their associated keys.
+	 * An element matches if it is associated with all {@link #all(Iterable) all} keys, none of the {@link #none(Iterable) none} keys, and at least one key of each {@link #any(Iterable) any} group.
+	 * An empty filter matches all elements.
+	 * @param <K> key type
+	 */
+	public static final class Filter<K> {
+		private final List<K> all = new ArrayList<>();
+		private final List<K> none = new ArrayList<>();
+		private final List<List<K>> any = new ArrayList<>();
+
+		/** @see #all(Iterable) */
+		@SafeVarargs
+		public final Filter<K> all(K... keys) {
+			return all(Arrays.asList(keys));
+		}
+		/**
+		 * Requires matching elements to be associated with all {@code keys}.
+		 * @return {@code this}
+		 */
+		public Filter<K> all(Iterable<? extends K> keys) {
+			keys.forEach(all::add);
+			return this;
+		}
+
+		/** @see #none(Iterable) */
+		@SafeVarargs
+		public final Filter<K> none(K... keys) {
+			return none(Arrays.asList(keys));
+		}
+		/**
+		 * Requires matching elements to be associated with none of {@code keys}.
+		 * @return {@code this}
+		 */
+		public Filter<K> none(Iterable<? extends K> keys) {
+			keys.forEach(none::add);
+			return this;
+		}
+
+		/** @see #any(Iterable) */
+		@SafeVarargs
+		public final Filter<K> any(K... keys) {
+			return any(Arrays.asList(keys));
+		}
+		/**
+		 * Requires matching elements to be associated with at least one of {@code keys}.
+		 * Each invocation adds a separate group which must be satisfied.
+		 * @return {@code this}
+		 */
+		public Filter<K> any(Iterable<? extends K> keys) {
+			List<K> group = new ArrayList<>();
+			keys.forEach(group::add);
+			any.add(group);
+			return this;
+		}
+
+		@Override
+		public String toString() {
+			return "Filter{" +
+				"all=" + all +
+				", none=" + none +
+				", any=" + any +
+				'}';
+		}
+	}
+
+	/**
+	 * A cached result of all elements in the associated {@link SparseMultiset} matching a fixed {@link Filter}.
+	 * The result is updated incrementally on each modification of the associated multiset until this query is {@link #close() closed}.
+	 */
+	public final class Query implements Iterable<T>, AutoCloseable {
+		private final int[] all;
+		private final int[] none;
+		private final int[][] any;
+		private final RoaringBitSet result;
+
+		private Query(Filter<? extends K> filter) {
+			all = intern(filter.all);
+			none = intern(filter.none);
+			any = new int[filter.any.size()][];
+			for (int i = 0; i < any.length; i++) {
+				any[i] = intern(filter.any.get(i));
+			}
+			result = new Plan(filter).select();
+			queries.add(this);
+		}
+		private int[] intern(List<? extends K> keys) {
+			int[] ids = NO_IDS;
+			for (K key : keys) {
+				int id = SparseMultiset.this.intern(key);
+				if (Arrays.binarySearch(ids, id) < 0) ids = insert(ids, id);
+			}
+			return ids;
+		}
+
+		private void update(int i) {
+			if (matches(i)) {
+				result.set(i);
+			} else {
+				result.clear(i);
+			}
+		}
+		private boolean matches(int i) {
+			if (!live.get(i)) return false;
+
+			int[] elementIds = reverse.get(i);
+			for (int id : all) {
+				if (Arrays.binarySearch(elementIds, id) < 0) return false;
+			}
+			for (int id : none) {
+				if (Arrays.binarySearch(elementIds, id) >= 0) return false;
+			}
+			outer:
+			for (int[] group : any) {
+				for (int id : group) {
+					if (Arrays.binarySearch(elementIds, id) >= 0) continue outer;
+				}
+				return false;
+			}
+			return true;
+		}
+
+		/** @return number of matching elements */
+		public int size() {
+			return result.cardinality();
+		}
+
+		/** @return indexes of matching elements, in ascending order */
+		public PrimitiveIterator.OfInt indexes() {
+			return result.iterator();
+		}
+		/**
+		 * Invokes {@code action} on each matching element and its index, in ascending index order.
+		 */
+		public void forEach(ObjIntConsumer<? super T> action) {
+			for (int i = result.nextSetBit(0); i >= 0; i = result.nextSetBit(i + 1)) {
+				action.accept(dense.get(i), i);
+			}
+		}
+
+		@Override
+		public Iterator<T> iterator() {
+			return result.stream()
+				.mapToObj(dense::get)
+				.iterator();
+		}
+		@Override
+		public Spliterator<T> spliterator() {
+			return stream().spliterator();
+		}
+		/** @return stream of matching elements, splittable by word ranges of the cached result */
+		public Stream<T> stream() {
+			return SparseMultiset.this.stream(result, false);
+		}
+
+		/**
+		 * Stops updating this query's result.
+		 * Subsequent iterations of this query return a stale result.
+		 */
+		@Override
+		public void close() {
+			queries.remove(this);
+		}
+	}
 }
@@ -1,15 +1,25 @@
 package dev.kkorolyov.flub.data;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
+import java.util.Comparator;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import static dev.kkorolyov.flub.collections.Iterables.append;
-import static java.util.Collections.emptyList;
 import static java.util.Collections.singleton;
 import static java.util.Collections.unmodifiableList;
 
@@ -74,19 +84,241 @@ public final class Trie<T> {
 	 * @return {@code this}
 	 */
 	public Trie<T> add(Iterable<T> value) {
-		List<T> builder = new ArrayList<>();
+		Node node = insert(value);
+		if (node != root && !node.terminal) {
+			node.terminal = true;
+			node.reweigh(0);
+		}
+		return this;
+	}
 
-		Iterator<T> it = value.iterator();
+	/** @see #add(Iterable, double) */
+	public Trie<T> add(T[] value, double weight) {
+		return add(Arrays.asList(value), weight);
+	}
+	/**
+	 * Adds a complete value to this trie with a given weight, replacing any previous weight of {@code value}.
+	 * Values added without a weight have weight {@code 0}.
+	 * @param value value to add
+	 * @param weight value weight used to rank {@link #complete(Iterable, int)} results
+	 * @return {@code this}
+	 */
+	public Trie<T> add(Iterable<T> value, double weight) {
+		Node node = insert(value);
+		if (node != root) {
+			node.terminal = true;
+			node.reweigh(weight);
+		}
+		return this;
+	}
+	/**
+	 * Creates any missing nodes along {@code value}.
+	 * @return node at the end of {@code value}, or the root if {@code value} is empty
+	 */
+	private Node insert(Iterable<T> value) {
 		Node node = root;
-		while (it.hasNext()) {
-			T element = it.next();
-			builder.add(element);
+		for (T element : value) {
+			node = node.computeIfAbsent(element);
+		}
+		return node;
+	}
+
+	/** @see #withPrefix(Iterable) */
+	public Stream<List<T>> withPrefix(T element, T... elements) {
+		return withPrefix(append(singleton(element), elements));
+	}
+	/** @see #withPrefix(Iterable) */
+	public Stream<List<T>> withPrefix(T[] prefix) {
+		return withPrefix(Arrays.asList(prefix));
+	}
+	/**
+	 * Returns a lazy stream of all complete values in this trie starting with {@code prefix}, including {@code prefix} itself if complete.
+	 * Values are generated by depth-first traversal as the stream is consumed, so short-circuiting operations such as {@link Stream#limit(long)} visit only as many nodes as needed.
+	 * @param prefix prefix of values to stream; an empty prefix streams all values
+	 * @return stream of values starting with {@code prefix}, in depth-first order
+	 */
+	public Stream<List<T>> withPrefix(Iterable<T> prefix) {
+		Node start = prefix.iterator().hasNext() ? get(prefix) : root;
+		if (start == null) return Stream.empty();
+
+		Iterator<List<T>> it = new Iterator<>() {
+			private final Deque<Node> stack = new ArrayDeque<>(List.of(start));
+			private Node next = advance();
+
+			private Node advance() {
+				while (!stack.isEmpty()) {
+					Node node = stack.pop();
+					node.children.values().forEach(stack::push);
+					if (node.terminal) return node;
+				}
+				return null;
+			}
+
+			@Override
+			public boolean hasNext() {
+				return next != null;
+			}
+			@Override
+			public List<T> next() {
+				if (next == null) throw new NoSuchElementException();
+
+				Node result = next;
+				next = advance();
+				return result.getValue();
+			}
+		};
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(it, Spliterator.NONNULL), false);
+	}
+
+	/** @see #withinDistance(Iterable, int) */
+	public Stream<List<T>> withinDistance(T[] query, int k) {
+		return withinDistance(Arrays.asList(query), k);
+	}
+	/**
+	 * Returns a lazy stream of all complete values in this trie within Levenshtein distance {@code k} of {@code query}.
+	 * The trie is walked depth-first once, computing one row of the edit distance table per node from its parent's row, and any subtree whose row minimum exceeds {@code k} is skipped.
+	 * @param query value to match
+	 * @param k maximum number of element insertions, deletions, and substitutions between {@code query} and a returned value
+	 * @return stream of values within distance {@code k} of {@code query}, in depth-first order
+	 */
+	public Stream<List<T>> withinDistance(Iterable<T> query, int k) {
+		List<T> target = new ArrayList<>();
+		query.forEach(target::add);
+
+		int[] initial = new int[target.size() + 1];
+		Arrays.setAll(initial, i -> i);
+
+		Iterator<List<T>> it = new Iterator<>() {
+			private final Deque<Node> nodes = new ArrayDeque<>(List.of(root));
+			private final Deque<int[]> rows = new ArrayDeque<>(List.of(initial));
+			private Node next = advance();
+
+			private Node advance() {
+				while (!nodes.isEmpty()) {
+					Node node = nodes.pop();
+					int[] row = rows.pop();
+
+					for (Node child : node.children.values()) {
+						int[] childRow = new int[row.length];
+						childRow[0] = row[0] + 1;
+
+						int min = childRow[0];
+						for (int i = 1; i < row.length; i++) {
+							int cost = Objects.equals(target.get(i - 1), child.element) ? 0 : 1;
+							childRow[i] = Math.min(Math.min(childRow[i - 1], row[i]) + 1, row[i - 1] + cost);
+							min = Math.min(min, childRow[i]);
+						}
+						if (min <= k) {
+							nodes.push(child);
+							rows.push(childRow);
+						}
+					}
+					if (node.terminal && row[row.length - 1] <= k) return node;
+				}
+				return null;
+			}
 
-			node = node.computeIfAbsent(element, builder);
+			@Override
+			public boolean hasNext() {
+				return next != null;
+			}
+			@Override
+			public List<T> next() {
+				if (next == null) throw new NoSuchElementException();
+
+				Node result = next;
+				next = advance();
+				return result.getValue();
+			}
+		};
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(it, Spliterator.NONNULL), false);
+	}
+
+	/** @see #complete(Iterable, int) */
+	public List<List<T>> complete(T[] prefix, int k) {
+		return complete(Arrays.asList(prefix), k);
+	}
+	/**
+	 * Returns the {@code k} highest-weighted complete values starting with {@code prefix}.
+	 * Each node tracks the maximum weight of any value in its subtree, so the search expands subtrees best-first and never visits subtrees which cannot contribute a result.
+	 * @param prefix prefix of values to return; an empty prefix considers all values
+	 * @param k maximum number of values to return
+	 * @return up to {@code k} values starting with {@code prefix}, in descending weight order
+	 * @see #add(Iterable, double)
+	 */
+	public List<List<T>> complete(Iterable<T> prefix, int k) {
+		List<List<T>> result = new ArrayList<>(Math.min(k, 16));
+
+		Node start = prefix.iterator().hasNext() ? get(prefix) : root;
+		if (start == null || k <= 0) return result;
+
+		// nodes are queued by subtree max weight, and queued again by own weight once expanded
+		PriorityQueue<Candidate> queue = new PriorityQueue<>(Comparator.comparingDouble((Candidate c) -> c.weight).reversed());
+		if (start.maxWeight > Double.NEGATIVE_INFINITY) queue.add(new Candidate(start, start.maxWeight, false));
+
+		while (!queue.isEmpty() && result.size() < k) {
+			Candidate candidate = queue.poll();
+			Node node = candidate.node;
+
+			if (candidate.complete) {
+				result.add(node.getValue());
+			} else {
+				if (node.terminal) queue.add(new Candidate(node, node.weight, true));
+				for (Node child : node.children.values()) {
+					if (child.maxWeight > Double.NEGATIVE_INFINITY) queue.add(new Candidate(child, child.maxWeight, false));
+				}
+			}
 		}
-		if (!node.getValue().isEmpty()) node.terminal = true;
+		return result;
+	}
 
-		return this;
+	/**
+	 * Returns an immutable, compact snapshot of the current values of this trie.
+	 * Later changes to this trie do not affect the returned snapshot.
+	 * @return frozen snapshot of this trie
+	 */
+	public FrozenTrie<T> freeze() {
+		List<Node> nodes = new ArrayList<>();
+		nodes.add(root);
+
+		int[] children = new int[16];
+		for (int i = 0; i < nodes.size(); i++) {
+			if (i + 1 >= children.length) children = Arrays.copyOf(children, children.length * 2);
+			children[i] = nodes.size();
+
+			List<Node> next = new ArrayList<>(nodes.get(i).children.values());
+			next.sort(Comparator.comparingInt(node -> Objects.hashCode(node.element)));
+			nodes.addAll(next);
+		}
+		children[nodes.size()] = nodes.size();
+
+		Object[] labels = new Object[nodes.size()];
+		int[] parents = new int[nodes.size()];
+		BitSet terminals = new BitSet(nodes.size());
+		for (int i = 1; i < nodes.size(); i++) {
+			Node node = nodes.get(i);
+			labels[i] = node.element;
+			if (node.terminal) terminals.set(i);
+		}
+		for (int i = 0; i < nodes.size(); i++) {
+			for (int child = children[i]; child < children[i + 1]; child++) parents[child] = i;
+		}
+		return new FrozenTrie<>(labels, parents, Arrays.copyOf(children, nodes.size() + 1), terminals);
+	}
+
+	/**
+	 * A node queued for {@link #complete(Iterable, int)}, either as a subtree or as a complete value.
+	 */
+	private final class Candidate {
+		private final Node node;
+		private final double weight;
+		private final boolean complete;
+
+		private Candidate(Node node, double weight, boolean complete) {
+			this.node = node;
+			this.weight = weight;
+			this.complete = complete;
+		}
 	}
 
 	/**
@@ -94,15 +326,19 @@ public final class Trie<T> {
 	 * A node which {@link #isTerminal()} represents a complete value in the associated trie.
 	 */
 	public final class Node {
-		private final List<T> value;
+		private final Node parent;
+		private final T element;
 		private final Map<T, Node> children = new HashMap<>();
 		private boolean terminal;
+		private double weight;
+		private double maxWeight = Double.NEGATIVE_INFINITY;
 
 		private Node() {
-			this(emptyList());
+			this(null, null);
 		}
-		private Node(List<T> value) {
-			this.value = unmodifiableList(new ArrayList<>(value));
+		private Node(Node parent, T element) {
+			this.parent = parent;
+			this.element = element;
 		}
 
 		/**
@@ -120,8 +356,8 @@ public final class Trie<T> {
 		public Node get(T element) {
 			return children.get(element);
 		}
-		private Node computeIfAbsent(T element, List<T> value) {
-			return children.computeIfAbsent(element, k -> new Node(value));
+		private Node computeIfAbsent(T element) {
+			return children.computeIfAbsent(element, k -> new Node(this, k));
 		}
 
 		/** @return keys of child nodes */
@@ -129,14 +365,49 @@ public final class Trie<T> {
 			return children.keySet();
 		}
 
-		/** @return full node value */
+		/**
+		 * Sets this node's weight and updates the subtree max weights of it and its ancestors.
+		 */
+		private void reweigh(double weight) {
+			double previous = this.weight;
+			this.weight = weight;
+
+			if (weight >= previous) {
+				for (Node node = this; node != null && node.maxWeight < weight; node = node.parent) {
+					node.maxWeight = weight;
+				}
+			} else {
+				for (Node node = this; node != null; node = node.parent) {
+					double max = node.terminal ? node.weight : Double.NEGATIVE_INFINITY;
+					for (Node child : node.children.values()) max = Math.max(max, child.maxWeight);
+					if (max == node.maxWeight) break;
+					node.maxWeight = max;
+				}
+			}
+		}
+
+		/**
+		 * Computes this node's value by walking its ancestors, so no node stores a copy of its prefix.
+		 * @return full node value
+		 */
 		public List<T> getValue() {
-			return value;
+			int depth = 0;
+			for (Node node = this; node.parent != null; node = node.parent) depth++;
+
+			Object[] value = new Object[depth];
+			for (Node node = this; node.parent != null; node = node.parent) {
+				value[--depth] = node.element;
+			}
+			return (List<T>) unmodifiableList(Arrays.asList(value));
 		}
 
 		/** @return whether this node represents a complete value */
 		public boolean isTerminal() {
 			return terminal;
 		}
+		/** @return weight of this node's value if it is terminal, else {@code 0} */
+		public double getWeight() {
+			return weight;
+		}
 	}
 }
@@ -1,36 +1,466 @@
 package dev.kkorolyov.flub.data;
 
-import java.util.NavigableMap;
-import java.util.TreeMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Function;
+import java.util.random.RandomGenerator;
+import java.util.stream.DoubleStream;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
 
 /**
  * A distribution of randomly-selectable weighted values.
+ * Weights are kept in a Fenwick tree, so adding, updating, and removing a value and sampling all take {@code O(log n)}.
+ * The tree is rebuilt from the exact weights in {@code O(n)} once every {@code n} weight changes, or sooner if changes nearly cancel out the total weight, so rounding error from repeated changes does not accumulate.
  */
 public final class WeightedDistribution<T> {
-	private final NavigableMap<Integer, T> distribution = new TreeMap<>();
-	private int total;
+	private static final int BLOCK = 4096;
+	/** ratio of accumulated weight change magnitudes to total weight past which rounding error may be significant */
+	private static final double CANCELLATION = 0x1p20;
+
+	private final Map<T, Integer> indexes = new HashMap<>();
+	private Object[] values = new Object[0];
+	private double[] weights = new double[0];
+	/** 1-indexed Fenwick tree of {@link #weights} */
+	private double[] tree = new double[1];
+	private int size;
+	/** number of weight changes applied to {@link #tree} since it was last rebuilt */
+	private int changes;
+	/** sum of the magnitudes of weight changes applied to {@link #tree} since it was last rebuilt */
+	private double changed;
 
 	/**
 	 * Adds a weighted value to this distribution.
+	 * If {@code value} is already present, {@code weight} is added to its current weight.
 	 * @param value added value
 	 * @param weight value weight relative to this distribution's total weight
 	 * @return {@code this}
+	 * @throws IllegalArgumentException if {@code weight} is negative or not finite
+	 */
+	public WeightedDistribution<T> add(T value, double weight) {
+		return set(value, getWeight(value) + check(weight));
+	}
+	/**
+	 * Sets the weight of a value in this distribution, adding the value if not present.
+	 * @param value value to set weight of
+	 * @param weight new value weight relative to this distribution's total weight
+	 * @return {@code this}
+	 * @throws IllegalArgumentException if {@code weight} is negative or not finite
 	 */
-	public WeightedDistribution<T> add(T value, int weight) {
-		distribution.put(total, value);
-		total += weight;
+	public WeightedDistribution<T> set(T value, double weight) {
+		check(weight);
 
+		Integer i = indexes.get(value);
+		if (i != null) {
+			double delta = weight - weights[i];
+			weights[i] = weight;
+			update(i, delta);
+		} else {
+			append(value, weight);
+		}
 		return this;
 	}
+	/**
+	 * Removes a value from this distribution.
+	 * @param value value to remove
+	 * @return whether this distribution contained {@code value}
+	 */
+	public boolean remove(T value) {
+		Integer i = indexes.remove(value);
+		if (i == null) return false;
+
+		// move the last value into the removed slot to keep values contiguous
+		int last = --size;
+		double delta = weights[last] - weights[i];
+		values[i] = values[last];
+		weights[i] = weights[last];
+		// tree nodes past size are recomputed on append
+		values[last] = null;
+		weights[last] = 0;
+		if (i != last) {
+			indexes.put((T) values[i], i);
+			update(i, delta);
+		}
+
+		return true;
+	}
+
+	/**
+	 * @param value value to get weight of
+	 * @return weight of {@code value}, or {@code 0} if not present
+	 */
+	public double getWeight(T value) {
+		Integer i = indexes.get(value);
+		return i != null ? weights[i] : 0;
+	}
+	/** @return sum of all value weights */
+	public double getTotal() {
+		return prefix(size);
+	}
 
 	/** @return random value from this distribution; or {@code null} if empty distribution */
 	public T get() {
-		return total <= 0 ? null : distribution.floorEntry(ThreadLocalRandom.current().nextInt(total)).getValue();
+		return get(ThreadLocalRandom.current());
+	}
+	/**
+	 * @param random random generator to sample with
+	 * @return random value from this distribution; or {@code null} if empty distribution
+	 */
+	public T get(RandomGenerator random) {
+		return select(random.nextDouble());
+	}
+
+	/**
+	 * @param n number of values to sample
+	 * @param random random generator to sample with
+	 * @return {@code n} random values from this distribution, sampled with replacement
+	 */
+	public List<T> sample(int n, RandomGenerator random) {
+		List<T> result = new ArrayList<>(n);
+		for (int i = 0; i < n; i++) result.add(get(random));
+		return result;
+	}
+	/**
+	 * Fills an array with random values from this distribution, sampled with replacement.
+	 * @param array array to fill
+	 * @param random random generator to sample with
+	 * @return {@code array}
+	 */
+	public T[] fill(T[] array, RandomGenerator random) {
+		for (int i = 0; i < array.length; i++) array[i] = get(random);
+		return array;
+	}
+	/**
+	 * Returns a stream of random values from this distribution, sampled with replacement.
+	 * Values are generated in fixed-size blocks, each by its own generator seeded from {@code random}, so the stream may be made parallel and still yields the same values in the same order for a given seed.
+	 * This distribution must not be modified while the stream is consumed.
+	 * @param n number of values to sample
+	 * @param random random generator to sample with
+	 * @return stream of {@code n} random values
+	 */
+	public Stream<T> stream(long n, SplittableRandom random) {
+		return uniforms(n, random).mapToObj(this::select);
+	}
+
+	/** @return stream of {@code n} uniform doubles generated in independently-seeded blocks */
+	private static DoubleStream uniforms(long n, SplittableRandom random) {
+		long seed = random.nextLong();
+		return LongStream.range(0, (n + BLOCK - 1) / BLOCK)
+				.mapToObj(block -> new SplittableRandom(seed + block).doubles(Math.min(BLOCK, n - block * BLOCK)))
+				.flatMapToDouble(Function.identity());
+	}
+
+	/**
+	 * Samples distinct values without replacement, where each successive value is chosen with probability proportional to its weight among the values not yet chosen.
+	 * Runs in {@code O(n + k log k log(n / k))} expected time using a {@link Reservoir}.
+	 * @param k number of values to sample
+	 * @param random random generator to sample with
+	 * @return up to {@code k} distinct values with positive weight, in sampled order
+	 */
+	public List<T> sampleDistinct(int k, RandomGenerator random) {
+		Reservoir<T> reservoir = new Reservoir<>(k, random);
+		for (int i = 0; i < size; i++) {
+			reservoir.add((T) values[i], weights[i]);
+		}
+		return reservoir.get();
+	}
+
+	/** @return value at uniform position {@code u} in {@code [0, 1)} of the cumulative weights */
+	private T select(double u) {
+		double total = getTotal();
+		return total > 0 ? (T) values[find(u * total)] : null;
 	}
 
 	/** @return number of contained values */
 	public int size() {
-		return distribution.size();
+		return size;
+	}
+
+	/**
+	 * Returns an immutable snapshot of this distribution which samples in constant time.
+	 * Later changes to this distribution do not affect the returned snapshot.
+	 * @return frozen snapshot of this distribution
+	 */
+	public Frozen<T> freeze() {
+		return new Frozen<>(Arrays.copyOf(values, size), Arrays.copyOf(weights, size));
+	}
+
+	private static double check(double weight) {
+		if (!(weight >= 0) || Double.isInfinite(weight)) throw new IllegalArgumentException("weight must be finite and >= 0: " + weight);
+		return weight;
+	}
+
+	private void append(T value, double weight) {
+		if (size == values.length) {
+			int capacity = Math.max(8, size * 2);
+			values = Arrays.copyOf(values, capacity);
+			weights = Arrays.copyOf(weights, capacity);
+			tree = Arrays.copyOf(tree, capacity + 1);
+		}
+		int i = size++;
+		values[i] = value;
+		weights[i] = weight;
+		indexes.put(value, i);
+
+		// a node covers the lowest-set-bit-sized range ending at its index
+		int node = i + 1;
+		tree[node] = weight + prefix(node - 1) - prefix(node - (node & -node));
+	}
+
+	/**
+	 * Adds {@code delta} to the weight at index {@code i} in the tree, rebuilding the tree if its accumulated rounding error may be significant.
+	 * {@link #weights} must already hold the changed weight.
+	 */
+	private void update(int i, double delta) {
+		for (int node = i + 1; node <= size; node += node & -node) {
+			tree[node] += delta;
+		}
+		changed += Math.abs(delta);
+		if (++changes >= Math.max(size, 64) || changed > CANCELLATION * getTotal()) rebuild();
+	}
+	/** Recomputes the tree from {@link #weights} in {@code O(n)}. */
+	private void rebuild() {
+		for (int node = 1; node <= size; node++) {
+			tree[node] = weights[node - 1];
+		}
+		for (int node = 1; node <= size; node++) {
+			int parent = node + (node & -node);
+			if (parent <= size) tree[parent] += tree[node];
+		}
+		changes = 0;
+		changed = 0;
+	}
+	/** @return sum of the first {@code count} weights */
+	private double prefix(int count) {
+		double sum = 0;
+		for (int node = count; node > 0; node -= node & -node) {
+			sum += tree[node];
+		}
+		return sum;
+	}
+	/** @return index of the value whose cumulative weight range contains {@code target} */
+	private int find(double target) {
+		int i = 0;
+		for (int step = Integer.highestOneBit(size); step > 0; step >>= 1) {
+			int node = i + step;
+			if (node <= size && tree[node] <= target) {
+				i = node;
+				target -= tree[node];
+			}
+		}
+		// rounding may overshoot past the last positive weight
+		if (i >= size) {
+			i = size - 1;
+			while (i > 0 && weights[i] <= 0) i--;
+		}
+		return i;
+	}
+
+	/**
+	 * An immutable weighted distribution sampled in {@code O(1)} by Vose's alias method.
+	 * Each value has a slot holding the probability of keeping it and an alias value to select otherwise, so a sample is one uniform slot choice and one probability comparison, without allocation.
+	 * A single uniform double supplies both: its scaled integer part chooses the slot and its fractional part is compared to the slot probability.
+	 * @param <T> value type
+	 * @see WeightedDistribution#freeze()
+	 */
+	public static final class Frozen<T> {
+		private final Object[] values;
+		private final double[] probabilities;
+		private final int[] aliases;
+		private final boolean empty;
+
+		private Frozen(Object[] values, double[] weights) {
+			this.values = values;
+			probabilities = new double[values.length];
+			aliases = new int[values.length];
+
+			double total = 0;
+			for (double weight : weights) total += weight;
+			empty = total <= 0;
+			if (empty) return;
+
+			int n = values.length;
+			double[] scaled = new double[n];
+			int[] small = new int[n], large = new int[n];
+			int smallSize = 0, largeSize = 0;
+
+			for (int i = 0; i < n; i++) {
+				scaled[i] = weights[i] * n / total;
+				if (scaled[i] < 1) small[smallSize++] = i;
+				else large[largeSize++] = i;
+			}
+			while (smallSize > 0 && largeSize > 0) {
+				int less = small[--smallSize], more = large[--largeSize];
+
+				probabilities[less] = scaled[less];
+				aliases[less] = more;
+
+				scaled[more] += scaled[less] - 1;
+				if (scaled[more] < 1) small[smallSize++] = more;
+				else large[largeSize++] = more;
+			}
+			// remaining slots are within rounding error of 1
+			while (largeSize > 0) probabilities[large[--largeSize]] = 1;
+			while (smallSize > 0) probabilities[small[--smallSize]] = 1;
+		}
+
+		/** @return random value from this distribution; or {@code null} if empty distribution */
+		public T get() {
+			return get(ThreadLocalRandom.current());
+		}
+		/** @see WeightedDistribution#get(RandomGenerator) */
+		public T get(RandomGenerator random) {
+			return select(random.nextDouble());
+		}
+
+		/** @see WeightedDistribution#sample(int, RandomGenerator) */
+		public List<T> sample(int n, RandomGenerator random) {
+			List<T> result = new ArrayList<>(n);
+			for (int i = 0; i < n; i++) result.add(get(random));
+			return result;
+		}
+		/** @see WeightedDistribution#fill(Object[], RandomGenerator) */
+		public T[] fill(T[] array, RandomGenerator random) {
+			for (int i = 0; i < array.length; i++) array[i] = get(random);
+			return array;
+		}
+		/** @see WeightedDistribution#stream(long, SplittableRandom) */
+		public Stream<T> stream(long n, SplittableRandom random) {
+			return uniforms(n, random).mapToObj(this::select);
+		}
+
+		private T select(double u) {
+			if (empty) return null;
+
+			double scaled = u * probabilities.length;
+			int i = Math.min((int) scaled, probabilities.length - 1);
+			return (T) values[scaled - i < probabilities[i] ? i : aliases[i]];
+		}
+
+		/** @return number of contained values */
+		public int size() {
+			return values.length;
+		}
+	}
+
+	/**
+	 * A weighted random sample without replacement of bounded size over a stream of values, using the A-ExpJ algorithm of Efraimidis and Spirakis.
+	 * Each value is conceptually assigned the key {@code u^(1/weight)} for uniform {@code u}, and the reservoir retains the {@code k} values with the largest keys in a min-heap.
+	 * Rather than drawing a key per value, the reservoir draws the total weight to skip before the next value which would enter it, so only {@code O(k log(n / k))} random draws are needed for {@code n} values.
+	 * Keys are kept as logarithms, so very small weights do not underflow.
+	 * @param <T> value type
+	 */
+	public static final class Reservoir<T> {
+		private final RandomGenerator random;
+		private final Object[] values;
+		private final double[] keys;
+		private int size;
+		/** remaining weight to skip before the next value enters the reservoir */
+		private double skip;
+
+		/**
+		 * Constructs a new empty reservoir.
+		 * @param k maximum number of values to retain
+		 * @param random random generator to sample with
+		 * @throws IllegalArgumentException if {@code k < 0}
+		 */
+		public Reservoir(int k, RandomGenerator random) {
+			if (k < 0) throw new IllegalArgumentException("k must be >= 0: " + k);
+
+			this.random = random;
+			values = new Object[k];
+			keys = new double[k];
+		}
+
+		/**
+		 * Offers a weighted value to this reservoir.
+		 * Values with {@code 0} weight are never retained.
+		 * @param value offered value
+		 * @param weight value weight
+		 * @return {@code this}
+		 * @throws IllegalArgumentException if {@code weight} is negative or not finite
+		 */
+		public Reservoir<T> add(T value, double weight) {
+			check(weight);
+			if (weight == 0 || values.length == 0) return this;
+
+			if (size < values.length) {
+				values[size] = value;
+				keys[size] = Math.log(uniform()) / weight;
+				siftUp(size++);
+
+				if (size == values.length) jump();
+			} else if ((skip -= weight) <= 0) {
+				// the new key is drawn conditioned on exceeding the current minimum
+				double threshold = Math.exp(weight * keys[0]);
+				double u = threshold + (1 - threshold) * uniform();
+
+				values[0] = value;
+				keys[0] = Math.log(u) / weight;
+				siftDown(0);
+
+				jump();
+			}
+			return this;
+		}
+
+		/** @return retained values, in descending key order, which is the order in which they would be sampled sequentially */
+		public List<T> get() {
+			Integer[] order = new Integer[size];
+			Arrays.setAll(order, i -> i);
+			Arrays.sort(order, (a, b) -> Double.compare(keys[b], keys[a]));
+
+			List<T> result = new ArrayList<>(size);
+			for (int i : order) result.add((T) values[i]);
+			return result;
+		}
+
+		/** @return number of retained values */
+		public int size() {
+			return size;
+		}
+
+		private void jump() {
+			skip = Math.log(uniform()) / keys[0];
+		}
+		/** @return uniform value in {@code (0, 1)} */
+		private double uniform() {
+			double u;
+			while ((u = random.nextDouble()) == 0) ;
+			return u;
+		}
+
+		private void siftUp(int i) {
+			while (i > 0) {
+				int parent = (i - 1) / 2;
+				if (keys[parent] <= keys[i]) break;
+				swap(i, parent);
+				i = parent;
+			}
+		}
+		private void siftDown(int i) {
+			while (true) {
+				int min = i, left = 2 * i + 1, right = left + 1;
+				if (left < size && keys[left] < keys[min]) min = left;
+				if (right < size && keys[right] < keys[min]) min = right;
+				if (min == i) break;
+				swap(i, min);
+				i = min;
+			}
+		}
+		private void swap(int a, int b) {
+			Object value = values[a];
+			values[a] = values[b];
+			values[b] = value;
+
+			double key = keys[a];
+			keys[a] = keys[b];
+			keys[b] = key;
+		}
 	}
 }
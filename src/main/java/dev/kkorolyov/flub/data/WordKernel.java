@@ -0,0 +1,33 @@
+package dev.kkorolyov.flub.data;
+
+/**
+ * Bulk bitwise operations over equal-length {@code long} word arrays.
+ * {@link #INSTANCE} uses the incubating Vector API when the {@code jdk.incubator.vector} module is available, and a scalar loop otherwise.
+ * The vectorized kernel may be disabled by setting system property {@value #VECTOR_PROPERTY} to {@code false}.
+ */
+interface WordKernel {
+	String VECTOR_PROPERTY = "dev.kkorolyov.flub.vector";
+
+	WordKernel INSTANCE = load();
+
+	/** Sets each word in {@code words} to itself AND the respective word in {@code other}. */
+	void and(long[] words, long[] other);
+	/** Sets each word in {@code words} to itself AND NOT the respective word in {@code other}. */
+	void andNot(long[] words, long[] other);
+	/** Sets each word in {@code words} to itself OR the respective word in {@code other}. */
+	void or(long[] words, long[] other);
+
+	private static WordKernel load() {
+		Module vector = ModuleLayer.boot().findModule("jdk.incubator.vector").orElse(null);
+		if (Boolean.parseBoolean(System.getProperty(VECTOR_PROPERTY, "true")) && vector != null) {
+			try {
+				// This module does not declare the incubating module, so read it on demand
+				WordKernel.class.getModule().addReads(vector);
+				return (WordKernel) Class.forName("dev.kkorolyov.flub.data.VectorWordKernel").getDeclaredConstructor().newInstance();
+			} catch (ReflectiveOperationException | LinkageError e) {
+				// Fall back to scalar
+			}
+		}
+		return new ScalarWordKernel();
+	}
+}
@@ -0,0 +1,378 @@
+package dev.kkorolyov.flub.function;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import java.util.function.ToLongFunction;
+
+/**
+ * A {@link Cache} enforcing the bounds of a {@link CacheSpec}.
+ * Values are held in a {@link ConcurrentHashMap}, so hits never block.
+ * Eviction order is tracked in intrusive LRU segments guarded by a lock; hits record their access only if the lock is free.
+ * Expiration order is tracked in separate write- and access-ordered queues, so an expired entry is removed when read or when any later entry is cached, regardless of its eviction order.
+ * @param <K> key type
+ * @param <V> value type
+ */
+final class BoundedCache<K, V> implements Cache<K, V> {
+	private static final int NONE = -1, WINDOW = 0, PROBATION = 1, PROTECTED = 2;
+	private static final int[] EVICTION_ORDER = {PROBATION, PROTECTED, WINDOW};
+
+	private final ConcurrentHashMap<K, Node<K, V>> map = new ConcurrentHashMap<>();
+	private final ReentrantLock lock = new ReentrantLock();
+
+	private final long maximumWeight;
+	private final ToLongFunction<? super V> weigher;
+	private final long expireAfterWrite;
+	private final long expireAfterAccess;
+	private final LongSupplier ticker;
+	private final CacheStats stats;
+
+	private final Segment<K, V>[] segments = new Segment[]{new Segment<>(), new Segment<>(), new Segment<>()};
+	private final ExpiryQueue<K, V> writeQueue = new ExpiryQueue<>();
+	private final ExpiryQueue<K, V> accessQueue = new ExpiryQueue<>();
+	private final long windowMaximum;
+	private final long protectedMaximum;
+	private final FrequencySketch sketch;
+
+	BoundedCache(CacheSpec<? super V> spec) {
+		maximumWeight = spec.getMaximumWeight();
+		weigher = spec.getWeigher();
+		expireAfterWrite = spec.getExpireAfterWrite();
+		expireAfterAccess = spec.getExpireAfterAccess();
+		ticker = spec.getTicker();
+		stats = spec.getStats();
+		if (stats != null) stats.bind(map::size);
+
+		if (maximumWeight < 0) {
+			windowMaximum = Long.MAX_VALUE;
+			protectedMaximum = 0;
+			sketch = null;
+		} else if (spec.getEviction() == CacheSpec.Eviction.WINDOW_TINY_LFU) {
+			windowMaximum = Math.max(1, maximumWeight / 100);
+			protectedMaximum = (maximumWeight - windowMaximum) * 4 / 5;
+			sketch = new FrequencySketch(maximumWeight);
+		} else {
+			windowMaximum = 0;
+			protectedMaximum = maximumWeight * 4 / 5;
+			sketch = null;
+		}
+	}
+
+	@Override
+	public V get(K key, Function<? super K, ? extends V> loader) {
+		long now = ticker.getAsLong();
+
+		Node<K, V> node = map.get(key);
+		if (node != null) {
+			if (!isExpired(node, now)) {
+				if (stats != null) stats.hit();
+
+				node.accessTime = now;
+				afterRead(node);
+				return node.value;
+			}
+			lock.lock();
+			try {
+				evict(node);
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		if (stats != null) stats.miss();
+
+		Node<K, V>[] created = new Node[1];
+		node = map.computeIfAbsent(key, k -> {
+			V value = load(k, loader);
+			return value != null ? created[0] = new Node<>(k, value, weigh(value), now) : null;
+		});
+		if (node == null) return null;
+
+		if (node == created[0]) afterWrite(node, now);
+		else afterRead(node);
+
+		return node.value;
+	}
+
+	/** @return number of cached entries */
+	int size() {
+		return map.size();
+	}
+
+	private V load(K key, Function<? super K, ? extends V> loader) {
+		if (stats == null) return loader.apply(key);
+
+		long start = ticker.getAsLong();
+		try {
+			return loader.apply(key);
+		} finally {
+			stats.load(ticker.getAsLong() - start);
+		}
+	}
+
+	private long weigh(V value) {
+		long weight = weigher.applyAsLong(value);
+		if (weight < 0) throw new IllegalArgumentException("weight must be >= 0: " + weight);
+		return weight;
+	}
+
+	private boolean isExpired(Node<K, V> node, long now) {
+		return (expireAfterWrite >= 0 && now - node.writeTime >= expireAfterWrite)
+				|| (expireAfterAccess >= 0 && now - node.accessTime >= expireAfterAccess);
+	}
+
+	private void afterRead(Node<K, V> node) {
+		if (lock.tryLock()) {
+			try {
+				if (node.segment != NONE) {
+					onAccess(node);
+					if (node.accessLink != null) accessQueue.move(node.accessLink, node.accessTime);
+				}
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+	private void afterWrite(Node<K, V> node, long now) {
+		lock.lock();
+		try {
+			expire(now);
+			// the node may have been expired by another thread before reaching here
+			if (map.get(node.key) == node) {
+				if (expireAfterWrite >= 0) writeQueue.add(node.writeLink = new Link<>(node), node.writeTime);
+				if (expireAfterAccess >= 0) accessQueue.add(node.accessLink = new Link<>(node), node.accessTime);
+				onAdd(node);
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void onAccess(Node<K, V> node) {
+		if (sketch != null) sketch.increment(node.key.hashCode());
+
+		Segment<K, V> segment = segments[node.segment];
+		if (node.segment == PROBATION) {
+			segment.remove(node);
+			add(PROTECTED, node);
+
+			while (segments[PROTECTED].weight > protectedMaximum && segments[PROTECTED].head != null) {
+				Node<K, V> demoted = segments[PROTECTED].head;
+				segments[PROTECTED].remove(demoted);
+				add(PROBATION, demoted);
+			}
+		} else {
+			segment.remove(node);
+			segment.add(node);
+		}
+	}
+	private void onAdd(Node<K, V> node) {
+		if (sketch != null) sketch.increment(node.key.hashCode());
+
+		if (windowMaximum > 0) {
+			add(WINDOW, node);
+			if (maximumWeight < 0) return;
+
+			while (segments[WINDOW].weight > windowMaximum && segments[WINDOW].head != null) {
+				Node<K, V> candidate = segments[WINDOW].head;
+				segments[WINDOW].remove(candidate);
+				add(PROBATION, candidate);
+
+				admit(candidate);
+			}
+		} else {
+			add(PROBATION, node);
+		}
+		while (weight() > maximumWeight) {
+			evict(victim());
+		}
+	}
+	/** Evicts either {@code candidate} or main space victims until the cache fits, preferring to keep the more frequently accessed. */
+	private void admit(Node<K, V> candidate) {
+		while (weight() > maximumWeight) {
+			Node<K, V> victim = segments[PROBATION].head != candidate ? segments[PROBATION].head : segments[PROTECTED].head;
+			if (victim == null || sketch.frequency(candidate.key.hashCode()) <= sketch.frequency(victim.key.hashCode())) {
+				evict(candidate);
+				return;
+			}
+			evict(victim);
+		}
+	}
+	private Node<K, V> victim() {
+		for (int segment : EVICTION_ORDER) {
+			if (segments[segment].head != null) return segments[segment].head;
+		}
+		throw new IllegalStateException("no entries to evict from cache with weight " + weight());
+	}
+
+	/**
+	 * Evicts all expired entries from the oldest end of each expiry queue.
+	 * Access queue entries read without recording their access are moved to the back as they are reached.
+	 */
+	private void expire(long now) {
+		while (writeQueue.head != null && now - writeQueue.head.time >= expireAfterWrite) {
+			evict(writeQueue.head.node);
+		}
+		while (accessQueue.head != null) {
+			Link<K, V> link = accessQueue.head;
+			long accessTime = link.node.accessTime;
+			if (now - accessTime >= expireAfterAccess) evict(link.node);
+			else if (accessTime != link.time) accessQueue.move(link, accessTime);
+			else break;
+		}
+	}
+
+	private void add(int segment, Node<K, V> node) {
+		node.segment = segment;
+		segments[segment].add(node);
+	}
+	private void evict(Node<K, V> node) {
+		if (node.segment != NONE) {
+			segments[node.segment].remove(node);
+			node.segment = NONE;
+
+			if (node.writeLink != null) writeQueue.remove(node.writeLink);
+			if (node.accessLink != null) accessQueue.remove(node.accessLink);
+		}
+		if (map.remove(node.key, node) && stats != null) stats.evict();
+	}
+
+	private long weight() {
+		return segments[WINDOW].weight + segments[PROBATION].weight + segments[PROTECTED].weight;
+	}
+
+	private static final class Node<K, V> {
+		final K key;
+		final V value;
+		final long weight;
+		final long writeTime;
+		volatile long accessTime;
+
+		int segment = NONE;
+		Node<K, V> prev, next;
+		Link<K, V> writeLink, accessLink;
+
+		Node(K key, V value, long weight, long now) {
+			this.key = key;
+			this.value = value;
+			this.weight = weight;
+			writeTime = accessTime = now;
+		}
+	}
+
+	/**
+	 * A doubly-linked list of nodes from least to most recently used.
+	 */
+	private static final class Segment<K, V> {
+		Node<K, V> head, tail;
+		long weight;
+
+		void add(Node<K, V> node) {
+			node.prev = tail;
+			node.next = null;
+			if (tail != null) tail.next = node;
+			else head = node;
+			tail = node;
+
+			weight += node.weight;
+		}
+		void remove(Node<K, V> node) {
+			if (node.prev != null) node.prev.next = node.next;
+			else head = node.next;
+			if (node.next != null) node.next.prev = node.prev;
+			else tail = node.prev;
+			node.prev = node.next = null;
+
+			weight -= node.weight;
+		}
+	}
+
+	/**
+	 * A node's position in an {@link ExpiryQueue}.
+	 */
+	private static final class Link<K, V> {
+		final Node<K, V> node;
+		long time;
+		Link<K, V> prev, next;
+
+		Link(Node<K, V> node) {
+			this.node = node;
+		}
+	}
+	/**
+	 * A doubly-linked list of node links from oldest to newest time.
+	 */
+	private static final class ExpiryQueue<K, V> {
+		Link<K, V> head, tail;
+
+		void add(Link<K, V> link, long time) {
+			link.time = time;
+			link.prev = tail;
+			link.next = null;
+			if (tail != null) tail.next = link;
+			else head = link;
+			tail = link;
+		}
+		void move(Link<K, V> link, long time) {
+			remove(link);
+			add(link, time);
+		}
+		void remove(Link<K, V> link) {
+			if (link.prev != null) link.prev.next = link.next;
+			else head = link.next;
+			if (link.next != null) link.next.prev = link.prev;
+			else tail = link.prev;
+			link.prev = link.next = null;
+		}
+	}
+
+	/**
+	 * A count-min sketch of 4-bit access frequency counters.
+	 * All counters are halved once the number of increments reaches 10 times the sketch width, so old popularity decays.
+	 */
+	private static final class FrequencySketch {
+		private static final long[] SEEDS = {0x97cb3127L, 0xb5ad4eceL, 0x8d6c3f2bL, 0xc2b2ae35L};
+
+		private final byte[] table;
+		private final int mask;
+		private final int resetAt;
+		private int additions;
+
+		FrequencySketch(long capacity) {
+			int width = Integer.highestOneBit((int) Math.max(16, Math.min(capacity, 1 << 20)) * 2 - 1);
+			table = new byte[width * SEEDS.length];
+			mask = width - 1;
+			resetAt = 10 * width;
+		}
+
+		void increment(int hash) {
+			boolean added = false;
+			for (int i = 0; i < SEEDS.length; i++) {
+				int index = index(hash, i);
+				if (table[index] < 15) {
+					table[index]++;
+					added = true;
+				}
+			}
+			if (added && ++additions >= resetAt) reset();
+		}
+		int frequency(int hash) {
+			int frequency = Integer.MAX_VALUE;
+			for (int i = 0; i < SEEDS.length; i++) {
+				frequency = Math.min(frequency, table[index(hash, i)]);
+			}
+			return frequency;
+		}
+
+		private int index(int hash, int i) {
+			long h = (hash + SEEDS[i]) * SEEDS[i];
+			h += h >>> 32;
+			return i * (mask + 1) + ((int) h & mask);
+		}
+		private void reset() {
+			for (int i = 0; i < table.length; i++) table[i] >>= 1;
+			additions /= 2;
+		}
+	}
+}
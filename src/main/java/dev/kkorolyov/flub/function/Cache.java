@@ -0,0 +1,20 @@
+package dev.kkorolyov.flub.function;
+
+import java.util.function.Function;
+
+/**
+ * Stores the results of a memoized function.
+ * @param <K> key type
+ * @param <V> value type
+ */
+@FunctionalInterface
+interface Cache<K, V> {
+	/**
+	 * Returns the value cached at {@code key}, computing and caching it with {@code loader} if absent.
+	 * {@code null} values are not cached.
+	 * @param key key to get value for
+	 * @param loader computes the value for {@code key}
+	 * @return value at {@code key}
+	 */
+	V get(K key, Function<? super K, ? extends V> loader);
+}
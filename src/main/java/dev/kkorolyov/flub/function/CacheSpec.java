@@ -0,0 +1,145 @@
+package dev.kkorolyov.flub.function;
+
+import java.time.Duration;
+import java.util.function.LongSupplier;
+import java.util.function.ToLongFunction;
+
+/**
+ * Specifies the bounds, eviction policy, and statistics of a {@link Memoizer} cache.
+ * A new spec is unbounded; each bound applies independently, and an entry is evicted as soon as any bound is exceeded.
+ * @param <V> cached value type
+ * @see Memoizer#memoize(java.util.function.Function, CacheSpec)
+ */
+public final class CacheSpec<V> {
+	private long maximumWeight = -1;
+	private ToLongFunction<? super V> weigher = v -> 1;
+	private long expireAfterWrite = -1;
+	private long expireAfterAccess = -1;
+	private Eviction eviction = Eviction.WINDOW_TINY_LFU;
+	private LongSupplier ticker = System::nanoTime;
+	private CacheStats stats;
+
+	/**
+	 * Bounds the number of cached entries.
+	 * @param maximumSize maximum number of cached entries
+	 * @return {@code this}
+	 * @throws IllegalArgumentException if {@code maximumSize < 0}
+	 */
+	public CacheSpec<V> maximumSize(long maximumSize) {
+		return maximumWeight(maximumSize, v -> 1);
+	}
+	/**
+	 * Bounds the total weight of cached entries.
+	 * @param maximumWeight maximum total weight of cached entries
+	 * @param weigher computes the non-negative weight of a cached value
+	 * @return {@code this}
+	 * @throws IllegalArgumentException if {@code maximumWeight < 0}
+	 */
+	public CacheSpec<V> maximumWeight(long maximumWeight, ToLongFunction<? super V> weigher) {
+		if (maximumWeight < 0) throw new IllegalArgumentException("maximumWeight must be >= 0: " + maximumWeight);
+
+		this.maximumWeight = maximumWeight;
+		this.weigher = weigher;
+		return this;
+	}
+
+	/**
+	 * Expires each entry once {@code duration} has passed since it was cached.
+	 * @param duration entry lifetime
+	 * @return {@code this}
+	 * @throws IllegalArgumentException if {@code duration} is negative
+	 */
+	public CacheSpec<V> expireAfterWrite(Duration duration) {
+		expireAfterWrite = nanos(duration);
+		return this;
+	}
+	/**
+	 * Expires each entry once {@code duration} has passed since it was last read or cached.
+	 * @param duration entry idle lifetime
+	 * @return {@code this}
+	 * @throws IllegalArgumentException if {@code duration} is negative
+	 */
+	public CacheSpec<V> expireAfterAccess(Duration duration) {
+		expireAfterAccess = nanos(duration);
+		return this;
+	}
+
+	/**
+	 * Sets the policy choosing which entries to evict when a maximum size or weight is exceeded.
+	 * Defaults to {@link Eviction#WINDOW_TINY_LFU}.
+	 * @param eviction eviction policy
+	 * @return {@code this}
+	 */
+	public CacheSpec<V> eviction(Eviction eviction) {
+		this.eviction = eviction;
+		return this;
+	}
+
+	/**
+	 * Sets the source of time used for expiration and load time statistics.
+	 * Defaults to {@link System#nanoTime()}.
+	 * @param ticker returns the current time in nanoseconds
+	 * @return {@code this}
+	 */
+	public CacheSpec<V> ticker(LongSupplier ticker) {
+		this.ticker = ticker;
+		return this;
+	}
+
+	/**
+	 * Records statistics of the cache into {@code stats}.
+	 * Each memoized function requires its own {@code stats}.
+	 * @param stats statistics to record into
+	 * @return {@code this}
+	 */
+	public CacheSpec<V> recordStats(CacheStats stats) {
+		this.stats = stats;
+		return this;
+	}
+
+	private static long nanos(Duration duration) {
+		if (duration.isNegative()) throw new IllegalArgumentException("duration must be >= 0: " + duration);
+		return duration.toNanos();
+	}
+
+	long getMaximumWeight() {
+		return maximumWeight;
+	}
+	ToLongFunction<? super V> getWeigher() {
+		return weigher;
+	}
+	long getExpireAfterWrite() {
+		return expireAfterWrite;
+	}
+	long getExpireAfterAccess() {
+		return expireAfterAccess;
+	}
+	Eviction getEviction() {
+		return eviction;
+	}
+	LongSupplier getTicker() {
+		return ticker;
+	}
+	CacheStats getStats() {
+		return stats;
+	}
+
+	/**
+	 * A policy choosing which entries to evict from a size- or weight-bounded cache.
+	 */
+	public enum Eviction {
+		/**
+		 * Segmented LRU.
+		 * New entries enter a probationary segment, and entries read again are promoted to a protected segment holding 80% of the capacity.
+		 * Eviction takes the least recently used probationary entry, so entries read only once never displace frequently-read ones.
+		 */
+		SEGMENTED_LRU,
+		/**
+		 * Window TinyLFU.
+		 * New entries enter a small LRU window holding 1% of the capacity, in front of a segmented LRU main space.
+		 * An entry leaving the window is admitted to the main space only if its estimated access frequency, tracked by a compact count-min sketch which is periodically halved, exceeds that of the entry it would evict.
+		 * This resists both scans and changes in the popular set, and generally gives the highest hit rate.
+		 */
+		WINDOW_TINY_LFU
+	}
+}
@@ -0,0 +1,151 @@
+package dev.kkorolyov.flub.function;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import static java.util.Collections.unmodifiableMap;
+
+/**
+ * Collects statistics about the cache of a single memoized function.
+ * Counters are {@link LongAdder}s, so recording adds little contention to cache hits.
+ * @see CacheSpec#recordStats(CacheStats)
+ */
+public final class CacheStats {
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder loads = new LongAdder();
+	private final LongAdder totalLoadTime = new LongAdder();
+	private final LongAccumulator maxLoadTime = new LongAccumulator(Math::max, 0);
+	private final LongAdder evictions = new LongAdder();
+	private volatile LongSupplier size = () -> 0;
+	private volatile boolean bound;
+
+	/**
+	 * Binds these statistics to the cache whose size they report.
+	 * @throws IllegalStateException if already bound to a cache
+	 */
+	synchronized void bind(LongSupplier size) {
+		if (bound) throw new IllegalStateException("stats already bound to a cache; use a separate CacheStats per memoized function");
+
+		this.size = size;
+		bound = true;
+	}
+
+	void hit() {
+		hits.increment();
+	}
+	void miss() {
+		misses.increment();
+	}
+	void load(long nanos) {
+		loads.increment();
+		totalLoadTime.add(nanos);
+		maxLoadTime.accumulate(nanos);
+	}
+	void evict() {
+		evictions.increment();
+	}
+
+	/**
+	 * Returns a point-in-time copy of these statistics.
+	 * Counters are read individually, so a snapshot taken during concurrent use may be slightly inconsistent between counters.
+	 * @return snapshot of current statistics
+	 */
+	public Snapshot snapshot() {
+		return new Snapshot(hits.sum(), misses.sum(), loads.sum(), totalLoadTime.sum(), maxLoadTime.get(), size.getAsLong(), evictions.sum());
+	}
+
+	@Override
+	public String toString() {
+		return snapshot().toString();
+	}
+
+	/**
+	 * An immutable copy of {@link CacheStats} at a point in time.
+	 */
+	public static final class Snapshot {
+		private final long hitCount;
+		private final long missCount;
+		private final long loadCount;
+		private final long totalLoadTime;
+		private final long maxLoadTime;
+		private final long size;
+		private final long evictionCount;
+
+		private Snapshot(long hitCount, long missCount, long loadCount, long totalLoadTime, long maxLoadTime, long size, long evictionCount) {
+			this.hitCount = hitCount;
+			this.missCount = missCount;
+			this.loadCount = loadCount;
+			this.totalLoadTime = totalLoadTime;
+			this.maxLoadTime = maxLoadTime;
+			this.size = size;
+			this.evictionCount = evictionCount;
+		}
+
+		/** @return number of lookups which found a cached value */
+		public long getHitCount() {
+			return hitCount;
+		}
+		/** @return number of lookups which did not find a cached value */
+		public long getMissCount() {
+			return missCount;
+		}
+		/** @return fraction of lookups which found a cached value, or {@code 1} if there have been no lookups */
+		public double getHitRate() {
+			long requests = hitCount + missCount;
+			return requests == 0 ? 1 : (double) hitCount / requests;
+		}
+
+		/** @return number of times the memoized function was invoked */
+		public long getLoadCount() {
+			return loadCount;
+		}
+		/** @return total nanoseconds spent invoking the memoized function */
+		public long getTotalLoadTime() {
+			return totalLoadTime;
+		}
+		/** @return longest single invocation of the memoized function in nanoseconds */
+		public long getMaxLoadTime() {
+			return maxLoadTime;
+		}
+		/** @return mean nanoseconds per invocation of the memoized function, or {@code 0} if never invoked */
+		public double getAverageLoadTime() {
+			return loadCount == 0 ? 0 : (double) totalLoadTime / loadCount;
+		}
+
+		/** @return number of cached values */
+		public long getSize() {
+			return size;
+		}
+		/** @return number of values evicted due to size, weight, or expiration */
+		public long getEvictionCount() {
+			return evictionCount;
+		}
+
+		/**
+		 * Returns the statistics of this snapshot by name, for export to a metrics registry.
+		 * @return map of statistic names to values, in a stable order
+		 */
+		public Map<String, Number> toMap() {
+			Map<String, Number> result = new LinkedHashMap<>();
+			result.put("hits", hitCount);
+			result.put("misses", missCount);
+			result.put("hitRate", getHitRate());
+			result.put("loads", loadCount);
+			result.put("totalLoadTime", totalLoadTime);
+			result.put("maxLoadTime", maxLoadTime);
+			result.put("averageLoadTime", getAverageLoadTime());
+			result.put("size", size);
+			result.put("evictions", evictionCount);
+			return unmodifiableMap(result);
+		}
+
+		@Override
+		public String toString() {
+			return "CacheStats" + toMap();
+		}
+	}
+}
@@ -0,0 +1,203 @@
+package dev.kkorolyov.flub.function;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.function.IntFunction;
+import java.util.function.IntToLongFunction;
+
+/**
+ * Memoized functions of {@code int} inputs, which store inputs and {@code long} results without boxing.
+ * Reads never lock: results are written before their input is published with release semantics, and read after acquiring it.
+ * Results are computed outside of any lock, so concurrent calls with the same uncached input may each invoke the base function.
+ */
+final class IntCaches {
+	private static final VarHandle LONGS = MethodHandles.arrayElementVarHandle(long[].class);
+	private static final VarHandle OBJECTS = MethodHandles.arrayElementVarHandle(Object[].class);
+
+	private IntCaches() {}
+
+	/**
+	 * A cache of inputs in {@code [0, size)} in flat arrays indexed by input, delegating other inputs to a hashed cache.
+	 */
+	static final class Dense<R> implements IntFunction<R> {
+		private final IntFunction<? extends R> base;
+		private final Object[] values;
+		private final Hashed<R> fallback;
+
+		Dense(IntFunction<? extends R> base, int size) {
+			this.base = base;
+			values = new Object[size];
+			fallback = new Hashed<>(base);
+		}
+
+		@Override
+		public R apply(int in) {
+			if (in < 0 || in >= values.length) return fallback.apply(in);
+
+			Object value = OBJECTS.getAcquire(values, in);
+			if (value == null) {
+				value = base.apply(in);
+				if (value != null) OBJECTS.setRelease(values, in, value);
+			}
+			return (R) value;
+		}
+	}
+	/** @see Dense */
+	static final class DenseLong implements IntToLongFunction {
+		private final IntToLongFunction base;
+		private final long[] values;
+		/** bitset of cached inputs */
+		private final long[] cached;
+		private final HashedLong fallback;
+
+		DenseLong(IntToLongFunction base, int size) {
+			this.base = base;
+			values = new long[size];
+			cached = new long[(size + Long.SIZE - 1) / Long.SIZE];
+			fallback = new HashedLong(base);
+		}
+
+		@Override
+		public long applyAsLong(int in) {
+			if (in < 0 || in >= values.length) return fallback.applyAsLong(in);
+
+			long bit = 1L << in;
+			if (((long) LONGS.getAcquire(cached, in >>> 6) & bit) != 0) return values[in];
+
+			long value = base.applyAsLong(in);
+			values[in] = value;
+			LONGS.getAndBitwiseOrRelease(cached, in >>> 6, bit);
+			return value;
+		}
+	}
+
+	/**
+	 * A cache of arbitrary inputs in an open-addressing hash table which is copied on resize.
+	 * Each slot key holds its input in the upper 32 bits and a presence flag in the lowest bit.
+	 */
+	static final class Hashed<R> implements IntFunction<R> {
+		private final IntFunction<? extends R> base;
+		private volatile Table table = new Table(16);
+		private int size;
+
+		Hashed(IntFunction<? extends R> base) {
+			this.base = base;
+		}
+
+		@Override
+		public R apply(int in) {
+			Table table = this.table;
+			int slot = slot(table.keys, in);
+			if ((long) LONGS.getAcquire(table.keys, slot) == key(in)) return (R) table.values[slot];
+
+			R value = base.apply(in);
+			if (value != null) put(in, value);
+			return value;
+		}
+
+		private synchronized void put(int in, R value) {
+			Table table = this.table;
+			int slot = slot(table.keys, in);
+			if (table.keys[slot] != 0) return;
+
+			if (2 * (size + 1) > table.keys.length) {
+				Table resized = new Table(table.keys.length * 2);
+				for (int i = 0; i < table.keys.length; i++) {
+					if (table.keys[i] != 0) {
+						int newSlot = slot(resized.keys, (int) (table.keys[i] >> 32));
+						resized.keys[newSlot] = table.keys[i];
+						resized.values[newSlot] = table.values[i];
+					}
+				}
+				this.table = table = resized;
+				slot = slot(table.keys, in);
+			}
+			table.values[slot] = value;
+			LONGS.setRelease(table.keys, slot, key(in));
+			size++;
+		}
+
+		private static final class Table {
+			private final long[] keys;
+			private final Object[] values;
+
+			private Table(int capacity) {
+				keys = new long[capacity];
+				values = new Object[capacity];
+			}
+		}
+	}
+	/** @see Hashed */
+	static final class HashedLong implements IntToLongFunction {
+		private final IntToLongFunction base;
+		private volatile Table table = new Table(16);
+		private int size;
+
+		HashedLong(IntToLongFunction base) {
+			this.base = base;
+		}
+
+		@Override
+		public long applyAsLong(int in) {
+			Table table = this.table;
+			int slot = slot(table.keys, in);
+			if ((long) LONGS.getAcquire(table.keys, slot) == key(in)) return table.values[slot];
+
+			long value = base.applyAsLong(in);
+			put(in, value);
+			return value;
+		}
+
+		private synchronized void put(int in, long value) {
+			Table table = this.table;
+			int slot = slot(table.keys, in);
+			if (table.keys[slot] != 0) return;
+
+			if (2 * (size + 1) > table.keys.length) {
+				Table resized = new Table(table.keys.length * 2);
+				for (int i = 0; i < table.keys.length; i++) {
+					if (table.keys[i] != 0) {
+						int newSlot = slot(resized.keys, (int) (table.keys[i] >> 32));
+						resized.keys[newSlot] = table.keys[i];
+						resized.values[newSlot] = table.values[i];
+					}
+				}
+				this.table = table = resized;
+				slot = slot(table.keys, in);
+			}
+			table.values[slot] = value;
+			LONGS.setRelease(table.keys, slot, key(in));
+			size++;
+		}
+
+		private static final class Table {
+			private final long[] keys;
+			private final long[] values;
+
+			private Table(int capacity) {
+				keys = new long[capacity];
+				values = new long[capacity];
+			}
+		}
+	}
+
+	private static long key(int in) {
+		return (long) in << 32 | 1;
+	}
+	/**
+	 * Callers reading the returned slot's key again must compare it to {@code key(in)}, as another input may since have been inserted into an empty slot.
+	 * @return slot of {@code in} in {@code keys}, or the empty slot where it would be inserted
+	 */
+	private static int slot(long[] keys, int in) {
+		int mask = keys.length - 1;
+		int hash = in * 0x9e3779b9;
+		int slot = (hash ^ hash >>> 16) & mask;
+
+		long key = key(in);
+		long current;
+		while ((current = (long) LONGS.getAcquire(keys, slot)) != 0 && current != key) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+}
@@ -1,9 +1,14 @@
 package dev.kkorolyov.flub.function;
 
-import java.util.Map;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.BiFunction;
 import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.function.IntToLongFunction;
 import java.util.function.Supplier;
 
 /**
@@ -14,7 +19,11 @@ import java.util.function.Supplier;
 public final class Memoizer<T, R> {
 	private static final Object NULL = new Object();
 
-	private final Map<T, R> cache = new ConcurrentHashMap<>();
+	private final Cache<T, R> cache;
+
+	private Memoizer(Cache<T, R> cache) {
+		this.cache = cache;
+	}
 
 	/**
 	 * @param base base supplier
@@ -25,6 +34,16 @@ public final class Memoizer<T, R> {
 		Function<Object, T> transform = memoize(t -> base.get());
 		return () -> transform.apply(NULL);
 	}
+	/**
+	 * @param base base supplier
+	 * @param spec bounds of the result cache
+	 * @param <T> result type
+	 * @return memoized variant of {@code base} which caches its result within the bounds of {@code spec}
+	 */
+	public static <T> Supplier<T> memoize(Supplier<? extends T> base, CacheSpec<? super T> spec) {
+		Function<Object, T> transform = memoize(t -> base.get(), spec);
+		return () -> transform.apply(NULL);
+	}
 
 	/**
 	 * @param base base function
@@ -33,8 +52,19 @@ public final class Memoizer<T, R> {
 	 * @return memoized variant of {@code base}
 	 */
 	public static <T, R> Function<T, R> memoize(Function<? super T, ? extends R> base) {
-		return new Memoizer<T, R>().memoizeFunction(base);
+		return new Memoizer<T, R>(new ConcurrentHashMap<T, R>()::computeIfAbsent).memoizeFunction(base);
 	}
+	/**
+	 * @param base base function
+	 * @param spec bounds of the result cache
+	 * @param <T> input type
+	 * @param <R> result type
+	 * @return memoized variant of {@code base} which caches results within the bounds of {@code spec}
+	 */
+	public static <T, R> Function<T, R> memoize(Function<? super T, ? extends R> base, CacheSpec<? super R> spec) {
+		return new Memoizer<T, R>(new BoundedCache<>(spec)).memoizeFunction(base);
+	}
+
 	/**
 	 * @param base base bi-function
 	 * @param <T> first input arg type
@@ -43,15 +73,210 @@ public final class Memoizer<T, R> {
 	 * @return memoized variant of {@code base}
 	 */
 	public static <T, U, R> BiFunction<T, U, R> memoize(BiFunction<? super T, ? super U, ? extends R> base) {
-		Function<T, Function<U, R>> transform = memoize(
-				t1 -> memoize(
-						u1 -> base.apply(t1, u1)
-				)
-		);
-		return (t, u) -> transform.apply(t).apply(u);
+		Function<Pair<T, U>, R> transform = memoize(pair -> base.apply(pair.first, pair.second));
+		return (t, u) -> transform.apply(new Pair<>(t, u));
+	}
+	/**
+	 * @param base base bi-function
+	 * @param spec bounds of the result cache
+	 * @param <T> first input arg type
+	 * @param <U> second input arg type
+	 * @param <R> result type
+	 * @return memoized variant of {@code base} which caches results within the bounds of {@code spec}
+	 */
+	public static <T, U, R> BiFunction<T, U, R> memoize(BiFunction<? super T, ? super U, ? extends R> base, CacheSpec<? super R> spec) {
+		Function<Pair<T, U>, R> transform = memoize(pair -> base.apply(pair.first, pair.second), spec);
+		return (t, u) -> transform.apply(new Pair<>(t, u));
+	}
+
+	/**
+	 * Memoizes a function of {@code int} inputs without boxing them.
+	 * Unlike {@link #memoize(Function)}, concurrent calls with the same uncached input may each invoke {@code base}.
+	 * @param base base function
+	 * @param <R> result type
+	 * @return memoized variant of {@code base}
+	 */
+	public static <R> IntFunction<R> memoizeInt(IntFunction<? extends R> base) {
+		return new IntCaches.Hashed<>(base);
+	}
+	/**
+	 * Memoizes a function of {@code int} inputs, storing results for inputs in {@code [0, size)} in an array indexed by input.
+	 * Other inputs are memoized as in {@link #memoizeInt(IntFunction)}.
+	 * @param base base function
+	 * @param size size of the array-backed input domain
+	 * @param <R> result type
+	 * @return memoized variant of {@code base}
+	 */
+	public static <R> IntFunction<R> memoizeInt(IntFunction<? extends R> base, int size) {
+		return new IntCaches.Dense<>(base, size);
+	}
+	/**
+	 * Memoizes a function of {@code int} inputs to {@code long} results without boxing either.
+	 * Unlike {@link #memoize(Function)}, concurrent calls with the same uncached input may each invoke {@code base}.
+	 * @param base base function
+	 * @return memoized variant of {@code base}
+	 */
+	public static IntToLongFunction memoizeIntToLong(IntToLongFunction base) {
+		return new IntCaches.HashedLong(base);
+	}
+	/**
+	 * Memoizes a function of {@code int} inputs to {@code long} results, storing results for inputs in {@code [0, size)} in an array indexed by input.
+	 * Other inputs are memoized as in {@link #memoizeIntToLong(IntToLongFunction)}.
+	 * @param base base function
+	 * @param size size of the array-backed input domain
+	 * @return memoized variant of {@code base}
+	 */
+	public static IntToLongFunction memoizeIntToLong(IntToLongFunction base, int size) {
+		return new IntCaches.DenseLong(base, size);
+	}
+
+	/**
+	 * Returns a memoized function defined in terms of itself, for recursive algorithms such as dynamic programming.
+	 * {@code body} receives the memoized function and an input, and may call the memoized function on other inputs.
+	 * <p>
+	 * Results are computed outside of any map lock, so recursive calls never fail or deadlock, and concurrent calls for the same input wait for a single computation.
+	 * Deep recursion does not overflow the stack: once recursion reaches a fixed depth, the deepest pending input is computed first in a separate pass and the interrupted computations are restarted, finding it cached.
+	 * {@code body} may therefore be invoked more than once for an input, so it should have no side effects, and must not catch the {@link RuntimeException}s used to interrupt it.
+	 * @param body function body, given the memoized function and an input
+	 * @param <T> input type
+	 * @param <R> result type
+	 * @return memoized function defined by {@code body}
+	 * @throws IllegalStateException from the returned function if an input's computation depends on itself
+	 */
+	public static <T, R> Function<T, R> recursive(BiFunction<? super Function<T, R>, ? super T, ? extends R> body) {
+		return new Recursive<>(body);
 	}
 
 	private Function<T, R> memoizeFunction(Function<? super T, ? extends R> function) {
-		return in -> cache.computeIfAbsent(in, function);
+		return in -> cache.get(in, function);
+	}
+
+	/**
+	 * A composite key of 2 arguments.
+	 */
+	private static final class Pair<T, U> {
+		private final T first;
+		private final U second;
+
+		private Pair(T first, U second) {
+			this.first = first;
+			this.second = second;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) return true;
+			if (obj == null || getClass() != obj.getClass()) return false;
+			Pair<?, ?> o = (Pair<?, ?>) obj;
+			return Objects.equals(first, o.first) && Objects.equals(second, o.second);
+		}
+		@Override
+		public int hashCode() {
+			return 31 * Objects.hashCode(first) + Objects.hashCode(second);
+		}
+	}
+
+	/**
+	 * A memoized function which may call itself.
+	 */
+	private static final class Recursive<T, R> implements Function<T, R> {
+		private static final int MAX_DEPTH = 256;
+		private static final Object RETRY = new Object();
+
+		private final BiFunction<? super Function<T, R>, ? super T, ? extends R> body;
+		private final ConcurrentHashMap<T, Object> cache = new ConcurrentHashMap<>();
+		private final ThreadLocal<int[]> depth = ThreadLocal.withInitial(() -> new int[1]);
+
+		private Recursive(BiFunction<? super Function<T, R>, ? super T, ? extends R> body) {
+			this.body = body;
+		}
+
+		@Override
+		public R apply(T in) {
+			Object cached = cache.get(in);
+			if (cached != null && !(cached instanceof Pending)) return (R) cached;
+
+			int[] depth = this.depth.get();
+			if (depth[0] == 0) return drive(in, depth);
+			if (depth[0] >= MAX_DEPTH) throw new Deferral(this, in);
+			return compute(in, depth);
+		}
+
+		/** Computes {@code in} from the bottom of the stack, first computing any inputs deferred by deep recursion. */
+		private R drive(T in, int[] depth) {
+			Deque<T> work = new ArrayDeque<>();
+			work.push(in);
+
+			while (true) {
+				try {
+					R result = compute(work.peek(), depth);
+					work.pop();
+					if (work.isEmpty()) return result;
+				} catch (Deferral deferral) {
+					if (deferral.owner != this) throw deferral;
+
+					T deferred = (T) deferral.in;
+					if (work.contains(deferred)) throw new IllegalStateException("recursive computation of " + deferred + " depends on itself");
+					work.push(deferred);
+				}
+			}
+		}
+
+		private R compute(T in, int[] depth) {
+			while (true) {
+				Object cached = cache.get(in);
+				if (cached instanceof Pending) {
+					Pending pending = (Pending) cached;
+					if (pending.owner == Thread.currentThread()) throw new IllegalStateException("recursive computation of " + in + " depends on itself");
+
+					Object result = pending.result.join();
+					if (result != RETRY) return (R) result;
+				} else if (cached != null) {
+					return (R) cached;
+				} else {
+					Pending pending = new Pending();
+					if (cache.putIfAbsent(in, pending) == null) return compute(in, pending, depth);
+				}
+			}
+		}
+		private R compute(T in, Pending pending, int[] depth) {
+			Object result = RETRY;
+			depth[0]++;
+			try {
+				R value = body.apply(this, in);
+				if (value != null) cache.replace(in, pending, value);
+				else cache.remove(in, pending);
+
+				result = value;
+				return value;
+			} finally {
+				depth[0]--;
+				// waiters retry if this computation was interrupted or failed
+				if (result == RETRY) cache.remove(in, pending);
+				pending.result.complete(result);
+			}
+		}
+
+		/**
+		 * A computation in progress.
+		 */
+		private static final class Pending {
+			private final Thread owner = Thread.currentThread();
+			private final CompletableFuture<Object> result = new CompletableFuture<>();
+		}
+
+		/**
+		 * Unwinds deep recursion to compute {@link #in} first.
+		 */
+		private static final class Deferral extends RuntimeException {
+			private final transient Object owner;
+			private final transient Object in;
+
+			private Deferral(Object owner, Object in) {
+				super(null, null, false, false);
+				this.owner = owner;
+				this.in = in;
+			}
+		}
 	}
 }
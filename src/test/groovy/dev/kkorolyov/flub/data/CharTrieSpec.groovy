@@ -0,0 +1,56 @@
+package dev.kkorolyov.flub.data
+
+import spock.lang.Specification
+
+class CharTrieSpec extends Specification {
+	CharTrie trie = new CharTrie()
+
+	def "does not contain non-existent value"() {
+		expect:
+		!trie.contains('nope')
+	}
+	def "does not contain non-terminal value"() {
+		when:
+		trie.add('value')
+
+		then:
+		!trie.contains('val')
+		!trie.get('val').terminal
+	}
+	def "contains terminal value"() {
+		when:
+		trie.add('value')
+
+		then:
+		trie.contains('value')
+		trie.contains(new StringBuilder('value'))
+		trie.get('value').terminal
+	}
+
+	def "does not contain non-existent node"() {
+		expect:
+		trie.get('nope') == null
+	}
+	def "contains nodes along value paths"() {
+		List<String> values = ['value', 'valet', 'valets', 'boop']
+
+		when:
+		values.each(trie.&add)
+
+		then:
+		values.each { value ->
+			(1..value.length()).every { i ->
+				CharTrie.Node node = trie.get(value.substring(0, i))
+				node != null && node.value == value.substring(0, i)
+			}
+			trie.contains(value)
+		}
+	}
+	def "keeps child keys sorted"() {
+		when:
+		['vz', 'va', 'vm', 'vb'].each(trie.&add)
+
+		then:
+		trie.get('v').keys == ['a', 'b', 'm', 'z'] as char[]
+	}
+}
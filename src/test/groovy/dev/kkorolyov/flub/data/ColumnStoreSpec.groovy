@@ -0,0 +1,85 @@
+package dev.kkorolyov.flub.data
+
+import spock.lang.Specification
+
+class ColumnStoreSpec extends Specification {
+	SparseMultiset<Object, String> multiset = new SparseMultiset<>()
+	ColumnStore<String> columns = multiset.columns()
+
+	def "gets set values"() {
+		when:
+		columns.ints("count").set(3, 7)
+		columns.doubles("position").set(1, 2.5)
+		columns.<String>objects("name").set(0, "boop")
+
+		then:
+		columns.ints("count").get(3) == 7
+		columns.ints("count").get(100) == 0
+		columns.doubles("position").get(1) == 2.5
+		columns.<String>objects("name").get(0) == "boop"
+	}
+	def "exposes backing arrays"() {
+		when:
+		columns.ints("count").set(3, 7)
+		columns.doubles("position").set(1, 2.5)
+		columns.<String>objects("name").set(2, "boop")
+
+		then:
+		columns.ints("count").values()[3] == 7
+		columns.doubles("position").values()[1] == 2.5
+		columns.<String>objects("name").values()[2] == "boop"
+		columns.<String>objects("name").values()[0] == null
+	}
+	def "rejects mismatched column type"() {
+		columns.ints("count")
+
+		when:
+		columns.doubles("count")
+
+		then:
+		thrown IllegalArgumentException
+	}
+
+	def "updates values at query indexes"() {
+		String key = "velocity"
+		List<Integer> indexes = (0..<5).collect { multiset.add(Mock(Object)) }
+		indexes.each {
+			multiset.put(it, [key])
+			columns.doubles(key).set(it, it)
+		}
+		multiset.remove(2, [key])
+
+		when:
+		columns.doubles(key).update(multiset.indexes([key])) { it * 2 }
+
+		then:
+		(0..<5).collect { columns.doubles(key).get(it) } == [0, 2, 0, 6, 8]
+	}
+
+	def "resets values of removed elements"() {
+		String key = "count"
+		int i = multiset.add(Mock(Object))
+		multiset.put(i, [key])
+		columns.ints(key).set(i, 4)
+
+		when:
+		multiset.remove(i)
+
+		then:
+		columns.ints(key).get(i) == 0
+	}
+	def "resets values of removed elements in unassociated columns"() {
+		int i = multiset.add(Mock(Object))
+		columns.ints("count").set(i, 42)
+		columns.<String>objects("name").set(i, "boop")
+
+		when:
+		multiset.remove(i)
+		int reused = multiset.add(Mock(Object))
+
+		then:
+		reused == i
+		columns.ints("count").get(reused) == 0
+		columns.<String>objects("name").get(reused) == null
+	}
+}
@@ -0,0 +1,108 @@
+package dev.kkorolyov.flub.data
+
+import spock.lang.Specification
+
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+
+import static java.util.stream.Collectors.toSet
+
+class ConcurrentTrieSpec extends Specification {
+	ConcurrentTrie<Character> trie = new ConcurrentTrie<>()
+
+	def "does not contain non-existent value"() {
+		expect:
+		!trie.contains('nope' as Character[])
+	}
+	def "does not contain non-terminal value"() {
+		when:
+		trie.add('value' as Character[])
+
+		then:
+		!trie.contains('val' as Character[])
+		!trie.get('val' as Character[]).terminal
+	}
+	def "contains nodes along value paths"() {
+		Character[][] values = ['value', 'valet', 'valets', 'boop']
+
+		when:
+		values.each(trie.&add)
+
+		then:
+		values.each { value ->
+			Character[] builder = []
+			value.every { c ->
+				builder += c
+
+				ConcurrentTrie.Node node = trie.get(builder)
+				node != null && node.value == builder
+			}
+			trie.contains(value)
+		}
+	}
+	def "streams values with prefix"() {
+		when:
+		['value', 'valet', 'valets', 'boop'].each { trie.add(it as Character[]) }
+
+		then:
+		trie.withPrefix('val' as Character[]).map { it.join() }.collect(toSet()) == ['value', 'valet', 'valets'] as Set
+	}
+
+	def "node reflects later changes"() {
+		trie.add('value' as Character[])
+		ConcurrentTrie.Node node = trie.get('val' as Character[])
+
+		when:
+		trie.add('valet' as Character[])
+		trie.add('val' as Character[])
+
+		then:
+		node.keys as Set == ['u' as Character, 'e' as Character] as Set
+		node.terminal
+		node.get('e' as Character).value == 'vale' as Character[]
+	}
+	def "streams version at time of call"() {
+		['value', 'valet'].each { trie.add(it as Character[]) }
+
+		when:
+		Iterator<List<Character>> values = trie.withPrefix('val' as Character[]).iterator()
+		values.next()
+		trie.add('valets' as Character[])
+
+		then:
+		values.toList().size() == 1
+		trie.withPrefix('val' as Character[]).count() == 3
+	}
+
+	def "snapshot is unaffected by later changes"() {
+		trie.add('value' as Character[])
+		ConcurrentTrie<Character> snapshot = trie.snapshot()
+
+		when:
+		trie.add('boop' as Character[])
+		snapshot.add('valet' as Character[])
+
+		then:
+		!snapshot.contains('boop' as Character[])
+		!trie.contains('valet' as Character[])
+		snapshot.contains('value' as Character[])
+	}
+
+	def "contains all values added concurrently"() {
+		ConcurrentTrie<Integer> ints = new ConcurrentTrie<>()
+		def executor = Executors.newFixedThreadPool(4)
+
+		when:
+		(0..<4).each { t ->
+			executor.submit {
+				(0..<1000).each { i -> ints.add(t, i % 10, i) }
+			}
+		}
+		executor.shutdown()
+		executor.awaitTermination(10, TimeUnit.SECONDS)
+
+		then:
+		(0..<4).every { t -> (0..<1000).every { i -> ints.contains(t, i % 10, i) } }
+		ints.withPrefix([]).count() == 4000
+	}
+}
@@ -0,0 +1,66 @@
+package dev.kkorolyov.flub.data
+
+import spock.lang.Specification
+
+import static java.util.stream.Collectors.toSet
+
+class FrozenTrieSpec extends Specification {
+	Trie<Character> trie = new Trie<>()
+
+	def "contains frozen values"() {
+		when:
+		['value', 'valet', 'valets', 'boop'].each { trie.add(it as Character[]) }
+		FrozenTrie<Character> frozen = trie.freeze()
+
+		then:
+		['value', 'valet', 'valets', 'boop'].every { frozen.contains(it as Character[]) }
+		!frozen.contains('val' as Character[])
+		!frozen.contains('nope' as Character[])
+	}
+	def "contains nodes along value paths"() {
+		when:
+		trie.add('value' as Character[])
+		FrozenTrie<Character> frozen = trie.freeze()
+
+		then:
+		(1..5).every { i ->
+			Character[] prefix = 'value'.substring(0, i)
+			FrozenTrie.Node node = frozen.get(prefix)
+			node != null && node.value == prefix
+		}
+		frozen.get('val' as Character[]).keys == ['u' as Character]
+		frozen.get('nope' as Character[]) == null
+	}
+	def "equates nodes only within the same trie"() {
+		when:
+		trie.add('value' as Character[])
+		FrozenTrie<Character> frozen = trie.freeze()
+		FrozenTrie<Character> other = trie.freeze()
+
+		then:
+		frozen.get('val' as Character[]) == frozen.get('val' as Character[])
+		frozen.get('val' as Character[]).hashCode() == frozen.get('val' as Character[]).hashCode()
+		frozen.get('val' as Character[]) != other.get('val' as Character[])
+	}
+	def "streams values with prefix"() {
+		when:
+		['value', 'valet', 'valets', 'boop'].each { trie.add(it as Character[]) }
+		FrozenTrie<Character> frozen = trie.freeze()
+
+		then:
+		frozen.withPrefix('val' as Character[]).map { it.join() }.collect(toSet()) == ['value', 'valet', 'valets'] as Set
+		frozen.withPrefix([]).count() == 4
+	}
+
+	def "is unaffected by later changes"() {
+		trie.add('value' as Character[])
+		FrozenTrie<Character> frozen = trie.freeze()
+
+		when:
+		trie.add('boop' as Character[])
+
+		then:
+		!frozen.contains('boop' as Character[])
+		frozen.size() == 5
+	}
+}
@@ -0,0 +1,92 @@
+package dev.kkorolyov.flub.data
+
+import spock.lang.Specification
+
+import java.nio.file.Files
+import java.nio.file.Path
+
+import static java.util.stream.Collectors.toSet
+
+class MappedTrieSpec extends Specification {
+	Trie<Character> trie = new Trie<>()
+	Path path = Files.createTempFile("trie", ".bin")
+
+	def cleanup() {
+		Files.deleteIfExists(path)
+	}
+
+	def "reads written values"() {
+		when:
+		['value', 'valet', 'valets', 'boop'].each { trie.add(it as Character[]) }
+		MappedTrie.write(trie.freeze(), path, MappedTrie.Codec.CHARACTERS)
+		MappedTrie<Character> mapped = MappedTrie.open(path, MappedTrie.Codec.CHARACTERS)
+
+		then:
+		['value', 'valet', 'valets', 'boop'].every { mapped.contains(it as Character[]) }
+		!mapped.contains('val' as Character[])
+		!mapped.contains('nope' as Character[])
+		mapped.get('val' as Character[]).value == ['v', 'a', 'l'] as Character[]
+		mapped.get('nope' as Character[]) == null
+	}
+	def "streams values with prefix"() {
+		when:
+		['value', 'valet', 'valets', 'boop'].each { trie.add(it as Character[]) }
+		MappedTrie.write(trie.freeze(), path, MappedTrie.Codec.CHARACTERS)
+		MappedTrie<Character> mapped = MappedTrie.open(path, MappedTrie.Codec.CHARACTERS)
+
+		then:
+		mapped.withPrefix('val' as Character[]).map { it.join() }.collect(toSet()) == ['value', 'valet', 'valets'] as Set
+		mapped.withPrefix([]).count() == 4
+	}
+	def "equates nodes only within the same trie"() {
+		when:
+		trie.add('value' as Character[])
+		MappedTrie.write(trie.freeze(), path, MappedTrie.Codec.CHARACTERS)
+		MappedTrie<Character> mapped = MappedTrie.open(path, MappedTrie.Codec.CHARACTERS)
+		MappedTrie<Character> other = MappedTrie.open(path, MappedTrie.Codec.CHARACTERS)
+
+		then:
+		mapped.get('val' as Character[]) == mapped.get('val' as Character[])
+		mapped.get('val' as Character[]).hashCode() == mapped.get('val' as Character[]).hashCode()
+		mapped.get('val' as Character[]) != other.get('val' as Character[])
+	}
+	def "reads variable-length elements"() {
+		Trie<String> words = new Trie<>()
+
+		when:
+		words.add('the', 'quick', 'fox')
+		words.add('the', 'lazy', 'dog')
+		MappedTrie.write(words.freeze(), path, MappedTrie.Codec.STRINGS)
+		MappedTrie<String> mapped = MappedTrie.open(path, MappedTrie.Codec.STRINGS)
+
+		then:
+		mapped.contains('the', 'quick', 'fox')
+		mapped.contains('the', 'lazy', 'dog')
+		mapped.get('the').keys as Set == ['quick', 'lazy'] as Set
+	}
+
+	def "rejects non-trie files"() {
+		Files.write(path, [1, 2, 3, 4] as byte[])
+
+		when:
+		MappedTrie.open(path, MappedTrie.Codec.CHARACTERS)
+
+		then:
+		thrown IllegalArgumentException
+	}
+	def "rejects truncated trie files"() {
+		['value', 'valet', 'boop'].each { trie.add(it as Character[]) }
+		MappedTrie.write(trie.freeze(), path, MappedTrie.Codec.CHARACTERS)
+		byte[] bytes = Files.readAllBytes(path)
+		Files.write(path, Arrays.copyOf(bytes, length(bytes.length)))
+
+		when:
+		MappedTrie.open(path, MappedTrie.Codec.CHARACTERS)
+
+		then:
+		thrown IllegalArgumentException
+
+		where:
+		length << [{ 16 }, { it.intdiv(2) }, { it - 1 }]
+	}
+}
@@ -0,0 +1,85 @@
+package dev.kkorolyov.flub.data
+
+import spock.lang.Specification
+
+class RadixTrieSpec extends Specification {
+	RadixTrie<Character> trie = new RadixTrie<>()
+
+	def "does not contain non-existent value"() {
+		expect:
+		!trie.contains('nope' as Character[])
+	}
+	def "does not contain non-terminal value"() {
+		Character[] value = 'value'
+		Character[] partial = 'val'
+
+		when:
+		trie.add(value)
+
+		then:
+		!trie.contains(partial)
+		!trie.get(partial).terminal
+	}
+	def "contains terminal value"() {
+		Character[] value = 'value'
+
+		when:
+		trie.add(value)
+
+		then:
+		trie.contains(value)
+		trie.get(value).terminal
+	}
+	def "contains value ending inside existing edge"() {
+		Character[] value = 'value'
+		Character[] partial = 'val'
+
+		when:
+		trie.add(value)
+		trie.add(partial)
+
+		then:
+		trie.contains(value)
+		trie.contains(partial)
+		!trie.contains('va' as Character[])
+	}
+
+	def "does not contain non-existent node"() {
+		expect:
+		trie.get('nope' as Character[]) == null
+	}
+	def "contains nodes along value paths"() {
+		Character[][] values = [
+				'value',
+				'valet',
+				'valets',
+				'boop'
+		]
+
+		when:
+		values.each(trie.&add)
+
+		then:
+		values.each { value ->
+			Character[] builder = []
+			value.every { c ->
+				builder += c
+
+				RadixTrie.Node node = trie.get(builder)
+				node != null && node.value == builder
+			}
+			trie.contains(value)
+		}
+	}
+	def "node keys include branches within split edges"() {
+		when:
+		trie.add('value' as Character[])
+		trie.add('valet' as Character[])
+
+		then:
+		trie.get('val' as Character[]).keys == ['u' as Character] as Set
+		trie.get('valu' as Character[]).keys == ['e' as Character] as Set
+		trie.get('vale' as Character[]).keys == ['t' as Character] as Set
+		trie.get('va' as Character[]).keys == ['l' as Character] as Set
+	}
+}
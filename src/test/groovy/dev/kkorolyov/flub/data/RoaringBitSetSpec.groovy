@@ -0,0 +1,141 @@
+package dev.kkorolyov.flub.data
+
+import spock.lang.Specification
+
+import java.util.stream.StreamSupport
+
+class RoaringBitSetSpec extends Specification {
+	RoaringBitSet bitSet = new RoaringBitSet()
+
+	def "sets and clears values across chunks"() {
+		List<Integer> values = [0, 5, 65535, 65536, 200000, 1 << 30]
+
+		when:
+		values.each(bitSet.&set)
+
+		then:
+		values.every(bitSet.&get)
+		!bitSet.get(1)
+		bitSet.cardinality() == values.size()
+
+		when:
+		values.each(bitSet.&clear)
+
+		then:
+		bitSet.empty
+	}
+	def "reports whether modified"() {
+		expect:
+		bitSet.set(4)
+		!bitSet.set(4)
+		bitSet.clear(4)
+		!bitSet.clear(4)
+	}
+
+	def "sets ranges"() {
+		when:
+		bitSet.set(10, 140000)
+
+		then:
+		bitSet.cardinality() == 140000 - 10
+		!bitSet.get(9)
+		bitSet.get(10)
+		bitSet.get(139999)
+		!bitSet.get(140000)
+	}
+
+	def "iterates in ascending order"() {
+		List<Integer> values = [70000, 3, 9000, 1]
+
+		when:
+		values.each(bitSet.&set)
+
+		then:
+		bitSet.stream().toArray() as List == values.sort()
+		bitSet.nextSetBit(4) == 9000
+		bitSet.nextSetBit(70001) == -1
+	}
+
+	def "ranks"() {
+		when:
+		bitSet.set(100, 200)
+		bitSet.set(70000)
+
+		then:
+		bitSet.rank(0) == 0
+		bitSet.rank(150) == 50
+		bitSet.rank(70000) == 100
+		bitSet.rank(70001) == 101
+	}
+
+	def "splits into exactly sized word ranges"() {
+		when:
+		bitSet.set(0, 100000)
+		Spliterator.OfInt spliterator = bitSet.spliterator(10, 90000)
+		Spliterator.OfInt prefix = spliterator.trySplit()
+
+		then:
+		prefix.exactSizeIfKnown + spliterator.exactSizeIfKnown == 90000 - 10
+		prefix.hasCharacteristics(Spliterator.SUBSIZED)
+		StreamSupport.intStream(bitSet.spliterator(10, 90000), true).toArray() as List == (10..<90000)
+	}
+
+	def "converts between dense and sparse chunks"() {
+		when:
+		(0..<10000).each(bitSet.&set)
+		(0..<10000).findAll { it % 3 }.each(bitSet.&clear)
+
+		then:
+		bitSet.stream().toArray() as List == (0..<10000).findAll { !(it % 3) }
+	}
+
+	def "intersects"() {
+		RoaringBitSet other = of(5, 6, 70000, 300000)
+
+		when:
+		[1, 5, 70000, 140000].each(bitSet.&set)
+		bitSet.and(other)
+
+		then:
+		bitSet == of(5, 70000)
+	}
+	def "subtracts"() {
+		RoaringBitSet other = of(5, 6, 70000, 300000)
+
+		when:
+		[1, 5, 70000, 140000].each(bitSet.&set)
+		bitSet.andNot(other)
+
+		then:
+		bitSet == of(1, 140000)
+	}
+	def "unions"() {
+		RoaringBitSet other = of(5, 6, 70000, 300000)
+
+		when:
+		[1, 5, 70000, 140000].each(bitSet.&set)
+		bitSet.or(other)
+
+		then:
+		bitSet == of(1, 5, 6, 70000, 140000, 300000)
+		other == of(5, 6, 70000, 300000)
+	}
+
+	def "optimizes without changing contents"() {
+		when:
+		bitSet.set(0, 100000)
+		(0..<100).each { bitSet.set(200000 + it * 7) }
+		RoaringBitSet copy = bitSet.copy()
+		bitSet.optimize()
+
+		then:
+		bitSet == copy
+		bitSet.hashCode() == copy.hashCode()
+	}
+
+	private static RoaringBitSet of(int... values) {
+		RoaringBitSet result = new RoaringBitSet()
+		values.each(result.&set)
+		return result
+	}
+}
@@ -2,6 +2,10 @@ package dev.kkorolyov.flub.data
 
 import spock.lang.Specification
 
+import java.util.concurrent.ConcurrentHashMap
+import java.util.function.IntConsumer
+import java.util.function.ObjIntConsumer
+
 class SparseMultisetSpec extends Specification {
 	SparseMultiset<Object, Integer> multiset = new SparseMultiset()
 
@@ -32,6 +36,88 @@ class SparseMultisetSpec extends Specification {
 		multiset.get([key]) as Set == forKey as Set
 		multiset.get([otherKey]) as Set == forOtherKey as Set
 	}
+	def "gets by intersection of keys"() {
+		int key = 3
+		int otherKey = 15
+		Object both = Mock()
+		Object onlyKey = Mock()
+		Object onlyOtherKey = Mock()
+
+		when:
+		multiset.put(multiset.add(both), [key, otherKey])
+		multiset.put(multiset.add(onlyKey), [key])
+		multiset.put(multiset.add(onlyOtherKey), [otherKey])
+
+		then:
+		multiset.get([otherKey, key]) as Set == [both] as Set
+	}
+	def "iterates indexes by keys"() {
+		int key = 3
+		List<Integer> indexes = (0..9).collect { multiset.add(Mock(Object)) }
+		indexes.findAll { it % 2 }.each { multiset.put(it, [key]) }
+
+		when:
+		List<Integer> iterated = []
+		multiset.indexes([key]).forEachRemaining((IntConsumer) iterated.&add)
+		BitSet scratch = new BitSet()
+		scratch.set(0)
+		multiset.indexes([key], scratch)
+		Map<Integer, Object> visited = [:]
+		multiset.forEach([key], { element, i -> visited[i] = element } as ObjIntConsumer)
+
+		then:
+		iterated == [1, 3, 5, 7, 9]
+		scratch.stream().toArray() as List == iterated
+		visited == iterated.collectEntries { [(it): multiset.get(it)] }
+	}
+	def "gets overlapping results independently"() {
+		int key = 3
+		int otherKey = 4
+		Object element = Mock()
+		Object otherElement = Mock()
+
+		multiset.put(multiset.add(element), [key])
+		multiset.put(multiset.add(otherElement), [otherKey])
+
+		when:
+		Iterable<Object> result = multiset.get([key])
+		Iterable<Object> otherResult = multiset.get([otherKey])
+
+		then:
+		result as List == [element]
+		otherResult as List == [otherElement]
+		result as List == [element]
+	}
+	def "streams by keys in parallel"() {
+		int key = 3
+		List<Object> elements = (0..<5000).collect { Mock(Object) }
+		elements.each { multiset.put(multiset.add(it), [key]) }
+
+		when:
+		Set<Integer> visited = ConcurrentHashMap.newKeySet()
+		multiset.parallelForEach([key], { element, i -> visited.add(i) } as ObjIntConsumer)
+
+		then:
+		multiset.stream([key]).parallel().toList() == elements
+		visited == (0..<5000) as Set
+	}
+	def "gets by filter"() {
+		Object match = Mock()
+		Object otherMatch = Mock()
+		Object excluded = Mock()
+		Object missingAny = Mock()
+
+		when:
+		multiset.put(multiset.add(match), [1, 2, 4])
+		multiset.put(multiset.add(otherMatch), [1, 2, 5])
+		multiset.put(multiset.add(excluded), [1, 2, 3, 4])
+		multiset.put(multiset.add(missingAny), [1, 2])
+
+		then:
+		multiset.get(new SparseMultiset.Filter<Integer>().all(1, 2).none(3).any(4, 5)) as Set == [match, otherMatch] as Set
+		multiset.get(new SparseMultiset.Filter<Integer>().none(3)) as Set == [match, otherMatch, missingAny] as Set
+		(multiset.get(new SparseMultiset.Filter<Integer>().any(6)) as Set).empty
+	}
 	def "misses by unknown key"() {
 		int key = 4
 
@@ -55,10 +141,73 @@ class SparseMultisetSpec extends Specification {
 		multiset.remove(index)
 		multiset.get([key]) as Set == [otherElement] as Set
 	}
+	def "removes keys of removed element"() {
+		int key = 4
+		int otherKey = 5
+
+		int index = multiset.add(Mock(Object))
+		multiset.put(index, [key, otherKey])
+
+		when:
+		multiset.remove(index)
+
+		then:
+		multiset.keysOf(index).empty
+		(multiset.get([key]) as Set).empty
+		(multiset.get([otherKey]) as Set).empty
+	}
 	def "removes nothing at unset index"() {
 		expect:
 		!multiset.remove(0)
 	}
+	def "rejects keys at unset index"() {
+		multiset.add(Mock(Object))
+		multiset.remove(multiset.add(Mock(Object)))
+
+		when:
+		multiset.put(index, [1])
+
+		then:
+		thrown IndexOutOfBoundsException
+
+		when:
+		multiset.remove(index, [1])
+
+		then:
+		thrown IndexOutOfBoundsException
+
+		where:
+		index << [-1, 1, 2, 5]
+	}
+
+	def "gets keys of element"() {
+		int index = multiset.add(Mock(Object))
+
+		when:
+		multiset.put(index, [1, 2, 3])
+		multiset.remove(index, [2])
+
+		then:
+		multiset.keysOf(index) == [1, 3] as Set
+	}
+
+	def "equals regardless of key insertion order"() {
+		SparseMultiset<Object, Integer> other = new SparseMultiset<>()
+		Object element = Mock()
+		Object otherElement = Mock()
+
+		when:
+		multiset.put(multiset.add(element), [1, 2])
+		multiset.put(multiset.add(otherElement), [3])
+		other.add(element)
+		other.add(otherElement)
+		other.put(1, [3])
+		other.put(0, [2, 1])
+
+		then:
+		multiset == other
+		multiset.hashCode() == other.hashCode()
+	}
 
 	def "reuses tombstone indexes"() {
 		Object removed = Mock()
@@ -86,4 +235,193 @@ class SparseMultisetSpec extends Specification {
 		then:
 		multiset.get([]).toList().isEmpty()
 	}
+
+	def "gets same elements after optimizing"() {
+		int key = 2
+		List<Object> elements = (0..<100).collect { Mock(Object) }
+
+		when:
+		elements.each {
+			multiset.put(multiset.add(it), [key])
+		}
+		multiset.optimize()
+
+		then:
+		multiset.get([key]) as Set == elements as Set
+	}
+
+	def "query tracks modifications"() {
+		int key = 1
+		int otherKey = 2
+		Object element = Mock()
+		Object otherElement = Mock()
+
+		SparseMultiset.Query query = multiset.query([key, otherKey])
+		int i = multiset.add(element)
+		int otherI = multiset.add(otherElement)
+
+		when:
+		multiset.put(i, [key, otherKey])
+		multiset.put(otherI, [key])
+
+		then:
+		query as Set == [element] as Set
+
+		when:
+		multiset.put(otherI, [otherKey])
+		multiset.remove(i, [key])
+
+		then:
+		query as Set == [otherElement] as Set
+
+		when:
+		multiset.remove(otherI)
+
+		then:
+		query.size() == 0
+	}
+	def "query streams matches"() {
+		int key = 1
+		SparseMultiset.Query query = multiset.query([key])
+		List<Object> elements = (0..<10).collect { Mock(Object) }
+
+		when:
+		elements.each { multiset.put(multiset.add(it), [key]) }
+
+		then:
+		query.stream().toList() == elements
+		query.spliterator().exactSizeIfKnown == elements.size()
+	}
+	def "filter query tracks modifications"() {
+		SparseMultiset.Query query = multiset.query(new SparseMultiset.Filter<Integer>().all(1).none(2).any(3, 4))
+		Object element = Mock()
+		int i = multiset.add(element)
+
+		when:
+		multiset.put(i, [1, 4])
+
+		then:
+		query as Set == [element] as Set
+
+		when:
+		multiset.put(i, [2])
+
+		then:
+		query.size() == 0
+	}
+	def "closed query stops tracking"() {
+		int key = 1
+		SparseMultiset.Query query = multiset.query([key])
+
+		when:
+		query.close()
+		multiset.put(multiset.add(Mock(Object)), [key])
+
+		then:
+		query.size() == 0
+	}
+
+	def "compacts removed indexes"() {
+		int key = 1
+		List<Object> elements = (0..<6).collect { Mock(Object) }
+		List<Integer> indexes = elements.collect { multiset.add(it) }
+		indexes.each { multiset.put(it, [key]) }
+		SparseMultiset.Query query = multiset.query([key])
+
+		when:
+		[0, 2, 3].each(multiset.&remove)
+		int[] mapping = multiset.compact()
+
+		then:
+		mapping[0] == -1
+		mapping[2] == -1
+		mapping[3] == -1
+		[1, 4, 5].collect { mapping[it] } as Set == [0, 1, 2] as Set
+		[1, 4, 5].every { multiset.get(mapping[it]) == elements[it] }
+		indexes(multiset.indexes([key])) == [0, 1, 2]
+		query as Set == [elements[1], elements[4], elements[5]] as Set
+		multiset.add(Mock(Object)) == 3
+	}
+
+	def "tracks key changes since checkpoint"() {
+		int key = 1
+		int otherKey = 2
+		int i = multiset.add(Mock(Object))
+		int otherI = multiset.add(Mock(Object))
+		multiset.put(i, [key])
+		long checkpoint = multiset.clearChanges()
+
+		when:
+		multiset.put(otherI, [key, otherKey])
+		multiset.remove(i)
+
+		then:
+		indexes(multiset.addedSince(checkpoint, [key])) == [otherI]
+		indexes(multiset.removedSince(checkpoint, [key])) == [i]
+		indexes(multiset.changedSince(checkpoint, [key])) == [i, otherI]
+		indexes(multiset.changedSince(checkpoint, [otherKey])) == [otherI]
+		indexes(multiset.removedSince(checkpoint, [])) == [i]
+	}
+	def "clears changes"() {
+		int key = 1
+		multiset.put(multiset.add(Mock(Object)), [key])
+
+		when:
+		long checkpoint = multiset.clearChanges()
+
+		then:
+		indexes(multiset.changedSince(checkpoint, [key])).empty
+		indexes(multiset.changedSince(checkpoint, [])).empty
+	}
+	def "rejects cleared checkpoint"() {
+		long checkpoint = multiset.checkpoint()
+		multiset.clearChanges()
+
+		when:
+		multiset.changedSince(checkpoint, [1])
+
+		then:
+		thrown IllegalArgumentException
+	}
+	def "tracks changes per retained checkpoint"() {
+		int key = 1
+		int i = multiset.add(Mock(Object))
+		int otherI = multiset.add(Mock(Object))
+		long checkpoint = multiset.checkpoint()
+		long otherCheckpoint = multiset.checkpoint()
+
+		when:
+		multiset.put(i, [key])
+		multiset.release(otherCheckpoint)
+		otherCheckpoint = multiset.checkpoint()
+		multiset.put(otherI, [key])
+
+		then:
+		indexes(multiset.changedSince(checkpoint, [key])) == [i, otherI]
+		indexes(multiset.changedSince(otherCheckpoint, [key])) == [otherI]
+	}
+	def "rejects released checkpoint"() {
+		long checkpoint = multiset.checkpoint()
+		multiset.put(multiset.add(Mock(Object)), [1])
+		multiset.release(checkpoint)
+		multiset.checkpoint()
+
+		when:
+		multiset.changedSince(checkpoint, [1])
+
+		then:
+		thrown IllegalArgumentException
+
+		when:
+		multiset.release(checkpoint)
+
+		then:
+		thrown IllegalArgumentException
+	}
+
+	private static List<Integer> indexes(PrimitiveIterator.OfInt iterator) {
+		List<Integer> result = []
+		iterator.forEachRemaining((IntConsumer) result.&add)
+		return result
+	}
 }
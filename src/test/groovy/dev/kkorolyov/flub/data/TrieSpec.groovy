@@ -4,6 +4,8 @@ import dev.kkorolyov.flub.data.Trie
 
 import spock.lang.Specification
 
+import static java.util.stream.Collectors.toSet
+
 class TrieSpec extends Specification {
 	Trie<Character> trie = new Trie<>();
 
@@ -60,4 +62,46 @@ class TrieSpec extends Specification {
 			trie.contains(value)
 		}
 	}
+
+	def "streams values with prefix"() {
+		when:
+		['value', 'valet', 'valets', 'boop'].each { trie.add(it as Character[]) }
+
+		then:
+		trie.withPrefix('val' as Character[]).map { it.join() }.collect(toSet()) == ['value', 'valet', 'valets'] as Set
+		trie.withPrefix([]).count() == 4
+		trie.withPrefix('nope' as Character[]).count() == 0
+	}
+
+	def "completes highest-weighted values with prefix"() {
+		when:
+		trie.add('value' as Character[], 3)
+		trie.add('valet' as Character[], 5)
+		trie.add('valets' as Character[], 1)
+		trie.add('boop' as Character[], 10)
+
+		then:
+		trie.complete('val' as Character[], 2)*.join() == ['valet', 'value']
+		trie.complete([], 10)*.join() == ['boop', 'valet', 'value', 'valets']
+	}
+	def "completes with updated weights"() {
+		when:
+		trie.add('value' as Character[], 3)
+		trie.add('valet' as Character[], 5)
+		trie.add('valet' as Character[], 1)
+
+		then:
+		trie.complete('val' as Character[], 1)*.join() == ['value']
+	}
+
+	def "finds values within edit distance"() {
+		when:
+		['value', 'valet', 'valets', 'boop', 'vale'].each { trie.add(it as Character[]) }
+
+		then:
+		trie.withinDistance('valet' as Character[], 0).map { it.join() }.collect(toSet()) == ['valet'] as Set
+		trie.withinDistance('valet' as Character[], 1).map { it.join() }.collect(toSet()) == ['valet', 'valets', 'vale'] as Set
+		trie.withinDistance('bop' as Character[], 1).map { it.join() }.collect(toSet()) == ['boop'] as Set
+		trie.withinDistance('xyz' as Character[], 2).count() == 0
+	}
 }
@@ -0,0 +1,159 @@
+package dev.kkorolyov.flub.data
+
+import spock.lang.Specification
+
+class WeightedDistributionSpec extends Specification {
+	WeightedDistribution<String> distribution = new WeightedDistribution<>()
+
+	def "gets null from empty distribution"() {
+		expect:
+		distribution.get() == null
+		distribution.freeze().get() == null
+	}
+	def "never gets zero-weight values"() {
+		when:
+		distribution.add('never', 0).add('always', 1)
+
+		then:
+		(0..<1000).every { distribution.get() == 'always' }
+	}
+
+	def "merges weights of repeated values"() {
+		when:
+		distribution.add('a', 1).add('a', 2)
+
+		then:
+		distribution.size() == 1
+		distribution.getWeight('a') == 3
+	}
+	def "updates weights"() {
+		when:
+		distribution.add('a', 1).add('b', 1).set('a', 0)
+
+		then:
+		distribution.getWeight('a') == 0
+		distribution.total == 1
+		(0..<1000).every { distribution.get() == 'b' }
+	}
+	def "never gets zero-weight values after many reweights"() {
+		SplittableRandom random = new SplittableRandom(0)
+		(0..<11).each { distribution.add("value$it".toString(), 1) }
+
+		when:
+		(0..<200000).each { distribution.set('value6', random.nextDouble() * 1e12) }
+		distribution.set('value6', 0)
+
+		then:
+		distribution.total == 10
+		(0..<100000).every { distribution.get(random) != 'value6' }
+	}
+	def "removes values"() {
+		when:
+		distribution.add('a', 1).add('b', 2).add('c', 3)
+
+		then:
+		distribution.remove('a')
+		!distribution.remove('a')
+		distribution.size() == 2
+		distribution.total == 5
+		(0..<1000).every { distribution.get() in ['b', 'c'] }
+	}
+	def "sums large weights without overflow"() {
+		when:
+		distribution.add('a', Integer.MAX_VALUE).add('b', Integer.MAX_VALUE)
+
+		then:
+		distribution.total == 2.0d * Integer.MAX_VALUE
+		distribution.get() != null
+	}
+	def "rejects invalid weights"() {
+		when:
+		distribution.add('a', weight)
+
+		then:
+		thrown IllegalArgumentException
+
+		where:
+		weight << [-1, Double.NaN, Double.POSITIVE_INFINITY]
+	}
+
+	def "samples reproducibly from seed"() {
+		when:
+		distribution.add('a', 1).add('b', 2).add('c', 3)
+
+		then:
+		distribution.sample(100, new SplittableRandom(seed)) == distribution.sample(100, new SplittableRandom(seed))
+		distribution.fill(new String[100], new SplittableRandom(seed)) as List == distribution.sample(100, new SplittableRandom(seed))
+		distribution.freeze().sample(100, new SplittableRandom(seed)) == distribution.freeze().sample(100, new SplittableRandom(seed))
+
+		where:
+		seed << [0, 1, 42]
+	}
+	def "streams same values sequentially and in parallel"() {
+		when:
+		distribution.add('a', 1).add('b', 2).add('c', 3)
+		WeightedDistribution.Frozen<String> frozen = distribution.freeze()
+
+		then:
+		distribution.stream(20000, new SplittableRandom(7)).toList() == distribution.stream(20000, new SplittableRandom(7)).parallel().toList()
+		frozen.stream(20000, new SplittableRandom(7)).toList() == frozen.stream(20000, new SplittableRandom(7)).parallel().toList()
+		frozen.stream(20000, new SplittableRandom(7)).count() == 20000
+	}
+
+	def "samples distinct values without replacement"() {
+		when:
+		distribution.add('a', 1).add('b', 2).add('c', 3).add('d', 0)
+		List<String> sample = distribution.sampleDistinct(k, new SplittableRandom(3))
+
+		then:
+		sample.size() == size
+		sample.unique(false) == sample
+		!sample.contains('d')
+
+		where:
+		k << [0, 2, 3, 10]
+		size << [0, 2, 3, 3]
+	}
+	def "samples distinct values by weight"() {
+		SplittableRandom random = new SplittableRandom(5)
+
+		when:
+		distribution.add('a', 1).add('b', 9)
+		Map<String, Integer> firsts = (0..<10000).countBy { distribution.sampleDistinct(1, random)[0] }
+
+		then:
+		Math.abs(firsts['b'] / 10000 - 0.9) < 0.02
+	}
+	def "reservoir samples from stream"() {
+		WeightedDistribution.Reservoir<Integer> reservoir = new WeightedDistribution.Reservoir<>(5, new SplittableRandom(1))
+
+		when:
+		(0..<100000).each { reservoir.add(it, it % 2 == 0 ? 1 : 0) }
+
+		then:
+		reservoir.size() == 5
+		reservoir.get().every { it % 2 == 0 }
+		reservoir.get().unique(false).size() == 5
+	}
+
+	def "frozen gets values by weight"() {
+		when:
+		WeightedDistribution.Frozen<String> frozen = distribution.add('a', 1).add('b', 3).add('c', 0).freeze()
+		Map<String, Integer> counts = (0..<100000).countBy { frozen.get() }
+
+		then:
+		frozen.size() == 3
+		!counts.containsKey('c')
+		Math.abs(counts['a'] / 100000 - 0.25) < 0.01
+		Math.abs(counts['b'] / 100000 - 0.75) < 0.01
+	}
+	def "frozen is unaffected by later changes"() {
+		WeightedDistribution.Frozen<String> frozen = distribution.add('a', 1).freeze()
+
+		when:
+		distribution.add('b', 100)
+
+		then:
+		(0..<1000).every { frozen.get() == 'a' }
+	}
+}
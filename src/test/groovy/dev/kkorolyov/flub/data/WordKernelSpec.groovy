@@ -0,0 +1,33 @@
+package dev.kkorolyov.flub.data
+
+import spock.lang.Specification
+
+import java.util.function.BiConsumer
+
+class WordKernelSpec extends Specification {
+	WordKernel scalar = new ScalarWordKernel()
+	WordKernel kernel = WordKernel.INSTANCE
+
+	def "matches scalar kernel"() {
+		SplittableRandom random = new SplittableRandom(0)
+		long[] words = random.longs(1027).toArray()
+		long[] other = random.longs(1027).toArray()
+
+		long[] expected = words.clone()
+		long[] actual = words.clone()
+
+		when:
+		op(scalar).accept(expected, other)
+		op(kernel).accept(actual, other)
+
+		then:
+		actual == expected
+
+		where:
+		op << [
+				{ WordKernel k -> k.&and as BiConsumer },
+				{ WordKernel k -> k.&andNot as BiConsumer },
+				{ WordKernel k -> k.&or as BiConsumer }
+		]
+	}
+}
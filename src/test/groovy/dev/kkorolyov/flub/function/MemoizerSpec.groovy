@@ -2,12 +2,16 @@ package dev.kkorolyov.flub.function
 
 import spock.lang.Specification
 
+import java.time.Duration
 import java.util.concurrent.ThreadLocalRandom
 import java.util.function.BiFunction
 import java.util.function.BiPredicate
 import java.util.function.Function
+import java.util.function.IntFunction
+import java.util.function.IntToLongFunction
 import java.util.function.Predicate
 import java.util.function.Supplier
+import java.util.stream.IntStream
 
 import static dev.kkorolyov.flub.function.Memoizer.memoize
 
@@ -111,4 +115,218 @@ class MemoizerSpec extends Specification {
 		1 * biFunction.apply(arg1, arg) >> result2
 		1 * biFunction.apply(arg1, arg1) >> result3
 	}
+
+	def "bounded memoizer never caches more than maximum size"() {
+		CacheStats stats = new CacheStats()
+		Function<Integer, Integer> memo = memoize({ it } as Function, new CacheSpec<Integer>().maximumSize(10).eviction(eviction).recordStats(stats))
+
+		when:
+		List<Long> sizes = (0..<200).collect {
+			memo.apply(it % 100)
+			stats.snapshot().size
+		}
+
+		then:
+		sizes.every { it <= 10 }
+		sizes.last() == 10
+
+		where:
+		eviction << CacheSpec.Eviction.values()
+	}
+	def "bounded memoizer keeps frequently used values"() {
+		int loads = 0
+		Function<Integer, Integer> memo = memoize({ loads++; it } as Function, new CacheSpec<Integer>().maximumSize(10).eviction(eviction))
+
+		when:
+		(0..<100).each { memo.apply(0); memo.apply(1000 + it) }
+
+		then:
+		loads == 101
+
+		where:
+		eviction << CacheSpec.Eviction.values()
+	}
+	def "bounded memoizer weighs values"() {
+		int loads = 0
+		Function<Integer, Integer> memo = memoize({ loads++; it } as Function, new CacheSpec<Integer>().maximumWeight(10, { it }))
+
+		when:
+		memo.apply(20)
+		memo.apply(20)
+
+		then:
+		loads == 2
+	}
+	def "bounded memoizer expires after write"() {
+		long now = 0
+		Supplier<Object> memo = memoize(supplier, new CacheSpec<Object>().expireAfterWrite(Duration.ofSeconds(10)).ticker({ now }))
+
+		when:
+		memo.get()
+		now = Duration.ofSeconds(5).toNanos()
+		memo.get()
+		now = Duration.ofSeconds(10).toNanos()
+		memo.get()
+
+		then:
+		2 * supplier.get() >> 'value'
+	}
+	def "bounded memoizer expires after access"() {
+		long now = 0
+		Function<Object, Object> memo = memoize(function, new CacheSpec<Object>().expireAfterAccess(Duration.ofSeconds(10)).ticker({ now }))
+
+		when:
+		(1..3).each {
+			memo.apply(arg)
+			now += Duration.ofSeconds(9).toNanos()
+		}
+		now += Duration.ofSeconds(10).toNanos()
+		memo.apply(arg)
+
+		then:
+		2 * function.apply(arg) >> 'value'
+	}
+	def "bounded memoizer expires entries behind live ones"() {
+		long now = 0
+		CacheStats stats = new CacheStats()
+		Function<Integer, Integer> memo = memoize({ it } as Function, new CacheSpec<Integer>().expireAfterWrite(Duration.ofSeconds(10)).ticker({ now }).recordStats(stats))
+
+		when:
+		memo.apply(1)
+		now = Duration.ofSeconds(5).toNanos()
+		memo.apply(2)
+		now = Duration.ofSeconds(6).toNanos()
+		memo.apply(1)
+		now = Duration.ofSeconds(12).toNanos()
+		memo.apply(3)
+
+		then:
+		with(stats.snapshot()) {
+			size == 2
+			evictionCount == 1
+		}
+	}
+	def "bounded memoizes bi-function"() {
+		BiFunction<Object, Object, Object> memo = memoize(biFunction, new CacheSpec<Object>().maximumSize(10))
+
+		when:
+		(0..10).each {
+			memo.apply(arg, arg1)
+			memo.apply(arg1, arg)
+		}
+
+		then:
+		1 * biFunction.apply(arg, arg1) >> 'a'
+		1 * biFunction.apply(arg1, arg) >> 'b'
+	}
+
+	def "records stats"() {
+		long now = 0
+		CacheStats stats = new CacheStats()
+		Function<Integer, Integer> memo = memoize({ now += 5; it } as Function, new CacheSpec<Integer>().maximumSize(2).eviction(CacheSpec.Eviction.SEGMENTED_LRU).ticker({ now }).recordStats(stats))
+
+		when:
+		[1, 1, 2, 3, 1].each(memo.&apply)
+		CacheStats.Snapshot snapshot = stats.snapshot()
+
+		then:
+		with(snapshot) {
+			hitCount == 2
+			missCount == 3
+			hitRate == 0.4d
+			loadCount == 3
+			totalLoadTime == 15
+			maxLoadTime == 5
+			averageLoadTime == 5
+			size == 2
+			evictionCount == 1
+		}
+		snapshot.toMap().keySet() == ['hits', 'misses', 'hitRate', 'loads', 'totalLoadTime', 'maxLoadTime', 'averageLoadTime', 'size', 'evictions'] as Set
+	}
+	def "rejects stats shared between memoized functions"() {
+		CacheStats stats = new CacheStats()
+		memoize(function, new CacheSpec<Object>().recordStats(stats))
+
+		when:
+		memoize(function, new CacheSpec<Object>().recordStats(stats))
+
+		then:
+		thrown IllegalStateException
+	}
+
+	def "memoizes recursive function"() {
+		int calls = 0
+		Function<Integer, Long> fib = Memoizer.recursive({ self, n ->
+			calls++
+			n < 2 ? (long) n : self.apply(n - 1) + self.apply(n - 2)
+		} as BiFunction)
+
+		expect:
+		fib.apply(90) == 2880067194370816120L
+		calls == 91
+	}
+	def "memoizes deep recursive function without overflowing stack"() {
+		Function<Long, Long> sum = Memoizer.recursive({ self, n -> n == 0 ? 0L : n + self.apply(n - 1) } as BiFunction)
+
+		expect:
+		sum.apply(100000L) == 5000050000L
+	}
+	def "rejects recursive function depending on itself"() {
+		Function<Integer, Integer> cyclic = Memoizer.recursive({ self, n -> self.apply((n + 1) % 3) } as BiFunction)
+
+		when:
+		cyclic.apply(0)
+
+		then:
+		thrown IllegalStateException
+	}
+
+	def "memoizes int function"() {
+		int calls = 0
+		IntFunction<String> memo = size == null
+				? Memoizer.memoizeInt({ calls++; "v$it" as String } as IntFunction)
+				: Memoizer.memoizeInt({ calls++; "v$it" as String } as IntFunction, size)
+
+		when:
+		List<String> results = (0..10).collectMany { [-5, 0, 3, 99, 100, Integer.MAX_VALUE].collect(memo.&apply) }
+
+		then:
+		results.take(6) == ['v-5', 'v0', 'v3', 'v99', 'v100', "v${Integer.MAX_VALUE}"]
+		results.collate(6).every { it == results.take(6) }
+		calls == 6
+
+		where:
+		size << [null, 100]
+	}
+	def "memoizes int to long function"() {
+		int calls = 0
+		IntToLongFunction memo = size == null
+				? Memoizer.memoizeIntToLong({ calls++; (long) it * it } as IntToLongFunction)
+				: Memoizer.memoizeIntToLong({ calls++; (long) it * it } as IntToLongFunction, size)
+
+		when:
+		List<Long> results = (0..10).collectMany { [-5, 0, 3, 99, 100, Integer.MAX_VALUE].collect(memo.&applyAsLong) }
+
+		then:
+		results.take(6) == [25L, 0L, 9L, 9801L, 10000L, (long) Integer.MAX_VALUE * Integer.MAX_VALUE]
+		calls == 6
+
+		where:
+		size << [null, 100]
+	}
+	def "memoizes many int inputs"() {
+		IntToLongFunction memo = Memoizer.memoizeIntToLong({ it * 2L } as IntToLongFunction)
+
+		expect:
+		(-10000..10000).every { memo.applyAsLong(it) == it * 2L }
+		(-10000..10000).every { memo.applyAsLong(it) == it * 2L }
+	}
+	def "memoizes int inputs concurrently"() {
+		expect:
+		(1..20).every {
+			IntToLongFunction memo = Memoizer.memoizeIntToLong({ it * 2L } as IntToLongFunction)
+			IntFunction<Integer> boxed = Memoizer.memoizeInt({ it * 2 } as IntFunction)
+			IntStream.range(-5000, 5000).parallel().allMatch { memo.applyAsLong(it) == it * 2L && boxed.apply(it) == it * 2 }
+		}
+	}
 }
@@ -0,0 +1,50 @@
+package dev.kkorolyov.flub.data;
+
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Word kernel using the platform's preferred {@link LongVector} species, with a scalar tail.
+ * Only loaded reflectively by {@link WordKernel} when {@code jdk.incubator.vector} is available.
+ */
+final class VectorWordKernel implements WordKernel {
+	private static final VectorSpecies<Long> SPECIES = LongVector.SPECIES_PREFERRED;
+
+	@Override
+	public void and(long[] words, long[] other) {
+		int i = 0;
+		for (int bound = SPECIES.loopBound(words.length); i < bound; i += SPECIES.length()) {
+			LongVector.fromArray(SPECIES, words, i)
+				.and(LongVector.fromArray(SPECIES, other, i))
+				.intoArray(words, i);
+		}
+		for (; i < words.length; i++) {
+			words[i] &= other[i];
+		}
+	}
+	@Override
+	public void andNot(long[] words, long[] other) {
+		int i = 0;
+		for (int bound = SPECIES.loopBound(words.length); i < bound; i += SPECIES.length()) {
+			LongVector.fromArray(SPECIES, words, i)
+				.lanewise(VectorOperators.AND_NOT, LongVector.fromArray(SPECIES, other, i))
+				.intoArray(words, i);
+		}
+		for (; i < words.length; i++) {
+			words[i] &= ~other[i];
+		}
+	}
+	@Override
+	public void or(long[] words, long[] other) {
+		int i = 0;
+		for (int bound = SPECIES.loopBound(words.length); i < bound; i += SPECIES.length()) {
+			LongVector.fromArray(SPECIES, words, i)
+				.or(LongVector.fromArray(SPECIES, other, i))
+				.intoArray(words, i);
+		}
+		for (; i < words.length; i++) {
+			words[i] |= other[i];
+		}
+	}
+}